@@ -0,0 +1,274 @@
+package group30;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import negotiator.AgentID;
+import negotiator.Bid;
+import negotiator.Deadline;
+import negotiator.DeadlineType;
+import negotiator.Domain;
+import negotiator.DomainImpl;
+import negotiator.actions.Offer;
+import negotiator.parties.NegotiationInfo;
+import negotiator.persistent.DefaultPersistentDataContainer;
+import negotiator.persistent.PersistentDataType;
+import negotiator.timeline.DiscreteTimeline;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * Benchmark of the hot paths of the agent on the real domains in genius/etc/templates.
+ * For each domain and opponent history length it reports throughput, bytes allocated per operation
+ * and latency percentiles of createBid, getNashProduct, getUtility, OpponentModel.addBid, getOpponentUtility
+ * and hardHeaded, and of scoring blocks of bids against many opponents.
+ * Operations too fast to time one by one are timed in batches; their rows are marked with the batch size
+ * and their percentiles are of the mean latency of a batch, so they don't show the tail of single operations.
+ *
+ * Run from the genius directory so the template paths resolve:
+ *   javac -cp negosimulator.jar -d ../out/bench ../src/group30/*.java ../bench/group30/*.java
+ *   java -cp negosimulator.jar:../out/bench group30.AgentBenchmark [seconds per benchmark]
+ */
+public class AgentBenchmark {
+
+    // Domain file followed by the profiles of us and the opponents
+    private static String[][] DOMAINS = {
+            {"etc/templates/partydomain/party_domain.xml",
+                    "etc/templates/partydomain/party1_utility.xml",
+                    "etc/templates/partydomain/party2_utility.xml",
+                    "etc/templates/partydomain/party3_utility.xml"},
+            {"etc/templates/laptopdomain/laptop_domain.xml",
+                    "etc/templates/laptopdomain/laptop_buyer_utility.xml",
+                    "etc/templates/laptopdomain/laptop_seller_utility.xml",
+                    "etc/templates/laptopdomain/laptop_seller_utility.xml"},
+            {"etc/templates/ANAC2015/group1-university/University.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util1.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util2.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util3.xml"},
+            {"etc/templates/ANAC2016/Maxoops/WindFarm.xml",
+                    "etc/templates/ANAC2016/Maxoops/WindFarm_util1.xml",
+                    "etc/templates/ANAC2016/Maxoops/WindFarm_util2.xml",
+                    "etc/templates/ANAC2016/Maxoops/WindFarm_util3.xml"},
+    };
+
+    // Opponent bidding history lengths to benchmark at
+    private static int[] HISTORY_LENGTHS = {10, 100, 1000, 10000};
+
+    // n# of opponents for scoring blocks of bids, the opponent models are repeated up to it
+    private static int MANY_OPPONENTS = 20;
+
+    // n# of bids per scored block
+    private static int BLOCK_SIZE = 64;
+
+    // Operations per latency sample, so very fast operations are not drowned by the timer
+    private static int BATCH_SIZE = 100;
+
+    // Time spent warming up and measuring each benchmark
+    private static double seconds = 1.0;
+
+    private static Random random = new Random(30);
+
+    // Results of the benchmarked operations end up here so they can't be optimised away
+    private static volatile double blackhole;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) seconds = Double.parseDouble(args[0]);
+
+        System.out.println(String.format("%-14s %7s %-37s %14s %10s %10s %10s %10s %10s",
+                "domain", "history", "benchmark", "ops/s", "B/op", "p50 ns", "p99 ns", "p99.9 ns", "max ns"));
+
+        for (String[] files : DOMAINS) {
+            Domain domain = new DomainImpl(files[0]);
+            AdditiveUtilitySpace[] profiles = new AdditiveUtilitySpace[files.length - 1];
+            for (int i = 0; i < profiles.length; i++) {
+                profiles[i] = new AdditiveUtilitySpace(domain, files[i + 1]);
+            }
+            String name = files[0].substring(files[0].lastIndexOf('/') + 1).replace(".xml", "");
+
+            for (int historyLength : HISTORY_LENGTHS) {
+                benchmarkDomain(name, domain, profiles, historyLength);
+            }
+        }
+    }
+
+    /**
+     * Benchmark every hot path on one domain with opponents that made historyLength offers each
+     */
+    private static void benchmarkDomain(String name, Domain domain, AdditiveUtilitySpace[] profiles,
+                                        int historyLength) {
+        // the agent half way through the negotiation, past the max utility offers
+        DiscreteTimeline timeline = new DiscreteTimeline(2 * historyLength);
+        timeline.setcRound(historyLength);
+        Agent30 agent = new Agent30();
+        agent.init(new NegotiationInfo(profiles[0], new Deadline(2 * historyLength, DeadlineType.ROUND), timeline,
+                random.nextLong(), new AgentID("Agent30"),
+                new DefaultPersistentDataContainer(null, PersistentDataType.DISABLED)));
+
+        // opponents offer bids that are good for themselves
+        DomainIndex domainIndex = new DomainIndex(domain);
+        List<OpponentModel> models = new ArrayList<>();
+        List<List<Bid>> histories = new ArrayList<>();
+        for (int p = 1; p < profiles.length; p++) {
+            AgentID opponent = new AgentID("Opponent" + p);
+            LazyOutcomeSpace opponentSpace = new LazyOutcomeSpace(domainIndex, profiles[p]);
+            List<Bid> history = new ArrayList<>(historyLength);
+            for (int i = 0; i < historyLength; i++) {
+                Bid bid = opponentSpace.getBidNearUtility(0.6 + 0.4 * random.nextDouble()).getBid();
+                agent.receiveMessage(opponent, new Offer(opponent, bid));
+                history.add(bid);
+            }
+            models.add(newModel(domainIndex, history));
+            histories.add(history);
+        }
+        OpponentModel model = models.get(0);
+
+        // candidate bids to score
+        Bid[] bids = new Bid[1024];
+        int[][] encodedBids = new int[bids.length][];
+        for (int i = 0; i < bids.length; i++) {
+            bids[i] = domain.getRandomBid(random);
+            encodedBids[i] = domainIndex.encode(bids[i]);
+        }
+
+        // blocks of the candidate bids, with made up utilities for us so none is dropped early
+        List<OpponentModel> manyModels = new ArrayList<>();
+        for (int p = 0; p < MANY_OPPONENTS; p++) {
+            manyModels.add(models.get(p % models.size()));
+        }
+        NashProductEvaluator evaluator = new NashProductEvaluator(domainIndex);
+        evaluator.update(manyModels);
+        int totalIssues = domainIndex.getTotalIssues();
+        int[][] blocks = new int[bids.length / BLOCK_SIZE][BLOCK_SIZE * totalIssues];
+        for (int i = 0; i < bids.length; i++) {
+            System.arraycopy(encodedBids[i], 0, blocks[i / BLOCK_SIZE], (i % BLOCK_SIZE) * totalIssues, totalIssues);
+        }
+        double[] blockUtilities = new double[BLOCK_SIZE];
+        Arrays.fill(blockUtilities, 1.0);
+        double[] blockScores = new double[BLOCK_SIZE];
+
+        String prefix = String.format("%-14s %7d ", name, historyLength);
+        run(prefix + "createBid", 1, i -> agent.createBid() == null ? 0 : 1);
+        run(prefix + "getNashProduct", BATCH_SIZE, i -> agent.getNashProduct(bids[i & 1023]));
+        run(prefix + "scoreBlock(64) x20", 1, i -> evaluator.scoreBlock(blocks[i % blocks.length], blockUtilities,
+                BLOCK_SIZE, -1, blockScores));
+        run(prefix + "getUtility", BATCH_SIZE, i -> agent.getUtility(bids[i & 1023]));
+        run(prefix + "getOpponentUtility", BATCH_SIZE, i -> model.getOpponentUtility(encodedBids[i & 1023]));
+        run(prefix + "getOpponentUtility(Bid)", BATCH_SIZE, i -> model.getOpponentUtility(bids[i & 1023]));
+        run(prefix + "hardHeaded", BATCH_SIZE, i -> model.hardHeaded(OpponentModel.RECENT_ROUNDS) == null ? 0 : 1);
+        // adding grows the history, so measure on a model of its own that is rebuilt with the first
+        // historyLength bids every historyLength adds, keeping its history between 1 and 2 times historyLength
+        OpponentModel[] growingModel = {newModel(domainIndex, histories.get(0))};
+        run(prefix + "addBid", 1, historyLength, () -> growingModel[0] = newModel(domainIndex, histories.get(0)),
+                i -> {
+                    growingModel[0].addBid(bids[i & 1023]);
+                    return 0;
+                });
+    }
+
+    /**
+     * @return new opponent model that was offered the bids
+     */
+    private static OpponentModel newModel(DomainIndex domainIndex, List<Bid> history) {
+        OpponentModel model = new OpponentModel(domainIndex);
+        for (Bid bid : history) {
+            model.addBid(bid);
+        }
+        return model;
+    }
+
+    /**
+     * Operation to benchmark, given the iteration number. Returns a double so results aren't boxed
+     */
+    private interface Operation {
+        double run(int i);
+    }
+
+    /**
+     * Warm up, then run an operation for the measuring time and print its statistics
+     * @param label first columns of the output line
+     * @param batchSize n# of operations timed together as one sample
+     * @param operation operation to benchmark
+     */
+    private static void run(String label, int batchSize, Operation operation) {
+        run(label, batchSize, 0, null, operation);
+    }
+
+    /**
+     * Warm up, then run an operation for the measuring time and print its statistics
+     * @param label first columns of the output line
+     * @param batchSize n# of operations timed together as one sample
+     * @param resetInterval n# of operations between two resets, 0 for none
+     * @param reset restores the state the operation changes, neither timed nor counted as allocated
+     * @param operation operation to benchmark
+     */
+    private static void run(String label, int batchSize, int resetInterval, Runnable reset, Operation operation) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        double sink = 0;
+
+        // warm up
+        int i = 0;
+        int sinceReset = 0;
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            if (resetInterval > 0 && sinceReset++ == resetInterval) {
+                reset.run();
+                sinceReset = 1;
+            }
+            sink += operation.run(i++);
+        }
+        if (resetInterval > 0) {
+            reset.run();
+            sinceReset = 0;
+        }
+
+        long[] samples = new long[1 << 16];
+        int totalSamples = 0;
+        long operations = 0;
+        long resetNanos = 0;
+        long resetAllocated = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        end = start + (long) (seconds * 1e9);
+        long now = start;
+        while (now < end) {
+            // resets happen between samples, which only have one operation when there are resets
+            if (resetInterval > 0 && sinceReset++ == resetInterval) {
+                long allocatedAtReset = threads.getThreadAllocatedBytes(threadId);
+                reset.run();
+                resetAllocated += threads.getThreadAllocatedBytes(threadId) - allocatedAtReset;
+                long resetEnd = System.nanoTime();
+                resetNanos += resetEnd - now;
+                now = resetEnd;
+                sinceReset = 1;
+            }
+            long sampleStart = now;
+            for (int b = 0; b < batchSize; b++) {
+                sink += operation.run(i++);
+            }
+            now = System.nanoTime();
+            if (totalSamples == samples.length) samples = Arrays.copyOf(samples, 2 * samples.length);
+            samples[totalSamples++] = (now - sampleStart) / batchSize;
+            operations += batchSize;
+        }
+        long elapsed = now - start - resetNanos;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore - resetAllocated;
+
+        // percentiles of batches are of their mean, so say so in the label
+        if (batchSize > 1) label += " [mean of " + batchSize + "]";
+        Arrays.sort(samples, 0, totalSamples);
+        System.out.println(String.format("%-60s %14.0f %10.1f %10d %10d %10d %10d", label,
+                operations / (elapsed / 1e9), allocated / (double) operations,
+                percentile(samples, totalSamples, 0.50), percentile(samples, totalSamples, 0.99),
+                percentile(samples, totalSamples, 0.999), samples[totalSamples - 1]));
+        blackhole = sink;
+    }
+
+    /**
+     * @return value at the given fraction of the sorted samples
+     */
+    private static long percentile(long[] sortedSamples, int totalSamples, double fraction) {
+        return sortedSamples[Math.min(totalSamples - 1, (int) (fraction * totalSamples))];
+    }
+}
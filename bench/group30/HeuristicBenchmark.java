@@ -0,0 +1,275 @@
+package group30;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.DomainImpl;
+import negotiator.bidding.BidDetails;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * Benchmark of the bid search heuristics against the random sampling loop createBid used before them,
+ * by the nash product they reach within a time budget per turn on domains in genius/etc/templates,
+ * from small ones up to one with millions of outcomes, and on synthetic domains of 1e7 outcomes, past the size
+ * the agent builds an outcome space for (1e9) and past the size a bid fits in a long. The heuristic the agent
+ * uses by default is marked with a *. Sampling needs
+ * the outcome space, so it only runs on domains the agent builds one for. Every method runs a number of turns
+ * in a row, so the heuristics that keep state between turns get to use it.
+ *
+ * Run from the genius directory so the template paths resolve:
+ *   javac -cp negosimulator.jar -d ../out/bench ../src/group30/*.java ../bench/group30/*.java
+ *   java -cp negosimulator.jar:../out/bench group30.HeuristicBenchmark
+ */
+public class HeuristicBenchmark {
+
+    // Domain file followed by the profiles of us and the opponents
+    private static String[][] DOMAINS = {
+            {"etc/templates/partydomain/party_domain.xml",
+                    "etc/templates/partydomain/party1_utility.xml",
+                    "etc/templates/partydomain/party2_utility.xml",
+                    "etc/templates/partydomain/party3_utility.xml"},
+            {"etc/templates/ANAC2015/group1-university/University.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util1.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util2.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util3.xml"},
+            {"etc/templates/AMPOvsCity/ampo_vs_city_template.xml",
+                    "etc/templates/AMPOvsCity/ampo_vs_city_ampo_space.xml",
+                    "etc/templates/AMPOvsCity/ampo_vs_city_city_space.xml"},
+    };
+
+    // n# of issues and values per issue of the synthetic domains, with a random profile for us and two opponents
+    private static int[][] SYNTHETIC_DOMAINS = {{7, 10}, {12, 10}, {30, 10}};
+
+    // Chance an opponent offers a random value instead of its best value on an issue of a synthetic domain
+    private static double SYNTHETIC_CONCESSION = 0.3;
+
+    // Time budgets per turn in milliseconds
+    private static double[] BUDGETS_MILLIS = {0.5, 2, 10};
+
+    // n# of turns each method runs per budget
+    private static int TURNS = 20;
+
+    // n# of offers of each opponent
+    private static int HISTORY_LENGTH = 100;
+
+    // Our min utility during the turns, as a share of our max utility
+    private static double MIN_UTILITY_SHARE = 0.7;
+
+    // Min n# of bids scored per turn, as in createBid
+    private static int MIN_EVALUATIONS = 10;
+
+    // Methods compared, the sampling loop first
+    private static String SAMPLING = "sampling";
+    private static String[] METHODS = {SAMPLING, NeighbourhoodSearch.NAME, AnnealingSearch.NAME, GeneticSearch.NAME};
+
+    private static Random random = new Random(30);
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(String.format("%-22s %14s %8s %-15s %14s %12s %14s",
+                "domain", "outcomes", "ms", "method", "nash product", "evaluations", "product/ms"));
+
+        List<String[]> domains = new ArrayList<>();
+        for (String[] files : DOMAINS) {
+            domains.add(files);
+        }
+        File directory = new File(System.getProperty("java.io.tmpdir"), "group30-synthetic");
+        directory.mkdirs();
+        for (int[] size : SYNTHETIC_DOMAINS) {
+            domains.add(writeSyntheticDomain(directory, size[0], size[1], 3));
+        }
+
+        for (String[] files : domains) {
+            Domain domain = new DomainImpl(files[0]);
+            AdditiveUtilitySpace[] profiles = new AdditiveUtilitySpace[files.length - 1];
+            for (int i = 0; i < profiles.length; i++) {
+                profiles[i] = new AdditiveUtilitySpace(domain, files[i + 1]);
+            }
+            String name = new File(files[0]).getName().replace(".xml", "");
+            benchmarkDomain(name, domain, profiles);
+        }
+    }
+
+    /**
+     * Run every method for every budget on one domain
+     */
+    private static void benchmarkDomain(String name, Domain domain, AdditiveUtilitySpace[] profiles) {
+        DomainIndex domainIndex = new DomainIndex(domain);
+        boolean suitable = LazyOutcomeSpace.isSuitable(domainIndex);
+        LazyOutcomeSpace outcomeSpace = suitable ? new LazyOutcomeSpace(domainIndex, profiles[0]) : null;
+        double[][] ownUtilities = LazyOutcomeSpace.getOwnUtilities(domainIndex, profiles[0]);
+        double minUtility = MIN_UTILITY_SHARE * getMaxUtility(ownUtilities);
+        double outcomes = domainIndex.getTotalOutcomes();
+        String chosen = BidSearchHeuristic.getDefaultName();
+
+        // opponents offer bids that are good for themselves, near a utility on domains with an outcome space
+        // and their best bid with some values conceded on the others
+        List<OpponentModel> models = new ArrayList<>();
+        for (int p = 1; p < profiles.length; p++) {
+            OpponentModel model = new OpponentModel(domainIndex);
+            if (suitable) {
+                LazyOutcomeSpace opponentSpace = new LazyOutcomeSpace(domainIndex, profiles[p]);
+                for (int i = 0; i < HISTORY_LENGTH; i++) {
+                    model.addBid(opponentSpace.getBidNearUtility(0.6 + 0.4 * random.nextDouble()).getBid());
+                }
+            } else {
+                double[][] opponentUtilities = LazyOutcomeSpace.getOwnUtilities(domainIndex, profiles[p]);
+                int[] encodedBid = new int[domainIndex.getTotalIssues()];
+                for (int i = 0; i < HISTORY_LENGTH; i++) {
+                    for (int issue = 0; issue < encodedBid.length; issue++) {
+                        encodedBid[issue] = random.nextDouble() < SYNTHETIC_CONCESSION
+                                ? random.nextInt(domainIndex.getNumberOfValues(issue))
+                                : LazyOutcomeSpace.getBestValue(opponentUtilities[issue]);
+                    }
+                    model.addBid(domainIndex.decode(encodedBid));
+                }
+            }
+            models.add(model);
+        }
+        NashProductEvaluator evaluator = new NashProductEvaluator(domainIndex);
+        evaluator.update(models);
+
+        List<int[]> seeds = new ArrayList<>();
+        for (OpponentModel model : models) {
+            for (int age = 0; age < Math.min(3, model.getRecentBidsSize()); age++) {
+                int[] seed = new int[domainIndex.getTotalIssues()];
+                model.getRecentBid(age, seed);
+                seeds.add(seed);
+            }
+        }
+
+        for (double budgetMillis : BUDGETS_MILLIS) {
+            long budgetNanos = (long) (budgetMillis * 1e6);
+            for (String method : METHODS) {
+                if (method.equals(SAMPLING) && !suitable) continue;
+                UtilityBands utilityBands = method.equals(SAMPLING) ? new UtilityBands(outcomeSpace) : null;
+                BidSearchHeuristic heuristic = method.equals(SAMPLING) ? null
+                        : BidSearchHeuristic.create(method, domainIndex, ownUtilities, evaluator, new Random(30));
+
+                double totalNashProduct = 0;
+                long totalEvaluations = 0;
+                for (int turn = 0; turn < TURNS; turn++) {
+                    long deadline = System.nanoTime() + budgetNanos;
+                    if (heuristic == null) {
+                        int[] evaluations = new int[1];
+                        totalNashProduct += sample(utilityBands, domainIndex, ownUtilities, evaluator, minUtility,
+                                deadline, evaluations);
+                        totalEvaluations += evaluations[0];
+                    } else {
+                        BidDetails bid = heuristic.search(seeds, minUtility, deadline, MIN_EVALUATIONS);
+                        totalNashProduct += bid == null ? 0 : bid.getMyUndiscountedUtil();
+                        totalEvaluations += heuristic.getLastEvaluations();
+                    }
+                }
+                double nashProduct = totalNashProduct / TURNS;
+                System.out.println(String.format("%-22s %14.4g %8.1f %-15s %14.6f %12d %14.6f", name, outcomes,
+                        budgetMillis, method + (method.equals(chosen) ? " *" : ""), nashProduct,
+                        totalEvaluations / TURNS, nashProduct / budgetMillis));
+            }
+        }
+    }
+
+    /**
+     * @return our max utility, from the best value of each issue
+     */
+    private static double getMaxUtility(double[][] ownUtilities) {
+        double maxUtility = 0;
+        for (double[] utilities : ownUtilities) {
+            maxUtility += utilities[LazyOutcomeSpace.getBestValue(utilities)];
+        }
+        return maxUtility;
+    }
+
+    /**
+     * Write a domain with random profiles in the GENIUS format, as the templates are
+     * @param directory directory to write the files to
+     * @param totalIssues n# of issues
+     * @param totalValues n# of values of each issue
+     * @param totalProfiles n# of profiles, ours first
+     * @return domain file followed by the profiles
+     */
+    private static String[] writeSyntheticDomain(File directory, int totalIssues, int totalValues,
+                                                 int totalProfiles) throws IOException {
+        String name = "synthetic_" + totalIssues + "x" + totalValues;
+        String[] files = new String[totalProfiles + 1];
+        files[0] = new File(directory, name + ".xml").getPath();
+        try (PrintWriter out = new PrintWriter(files[0], "UTF-8")) {
+            out.println("<negotiation_template>");
+            out.println("<utility_space number_of_issues=\"" + totalIssues + "\">");
+            writeIssues(out, name, totalIssues, totalValues, null);
+            out.println("</utility_space>");
+            out.println("</negotiation_template>");
+        }
+
+        Random profileRandom = new Random(totalIssues * 1000 + totalValues);
+        for (int p = 0; p < totalProfiles; p++) {
+            files[p + 1] = new File(directory, name + "_util" + (p + 1) + ".xml").getPath();
+            try (PrintWriter out = new PrintWriter(files[p + 1], "UTF-8")) {
+                out.println("<utility_space>");
+                writeIssues(out, name, totalIssues, totalValues, profileRandom);
+                out.println("</utility_space>");
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Write the objective of a synthetic domain, with random evaluations and weights for a profile
+     * @param random random source of the profile, null to write the domain without them
+     */
+    private static void writeIssues(PrintWriter out, String name, int totalIssues, int totalValues, Random random) {
+        out.println("<objective index=\"0\" etype=\"objective\" type=\"objective\" name=\"" + name + "\">");
+        for (int i = 1; i <= totalIssues; i++) {
+            out.println("<issue index=\"" + i + "\" etype=\"discrete\" type=\"discrete\" vtype=\"discrete\""
+                    + " name=\"Issue" + i + "\">");
+            for (int j = 1; j <= totalValues; j++) {
+                out.println("<item index=\"" + j + "\" value=\"Value" + i + "_" + j + "\""
+                        + (random == null ? "" : " evaluation=\"" + (1 + random.nextInt(100)) + "\"") + ">");
+                out.println("</item>");
+            }
+            out.println("</issue>");
+        }
+        if (random != null) {
+            double[] weights = new double[totalIssues];
+            double totalWeight = 0;
+            for (int i = 0; i < totalIssues; i++) {
+                weights[i] = 0.1 + random.nextDouble();
+                totalWeight += weights[i];
+            }
+            for (int i = 0; i < totalIssues; i++) {
+                out.println("<weight index=\"" + (i + 1) + "\" value=\"" + weights[i] / totalWeight + "\">");
+                out.println("</weight>");
+            }
+        }
+        out.println("</objective>");
+    }
+
+    /**
+     * The sampling loop of createBid: random acceptable bids until the deadline
+     * @param evaluations n# of bids scored is written to the first element
+     * @return best nash product found
+     */
+    private static double sample(UtilityBands utilityBands, DomainIndex domainIndex, double[][] ownUtilities,
+                                 NashProductEvaluator evaluator, double minUtility, long deadline,
+                                 int[] evaluations) {
+        int[] encodedBid = new int[domainIndex.getTotalIssues()];
+        double best = 0;
+        int sampled = 0;
+        while (sampled < MIN_EVALUATIONS || System.nanoTime() - deadline < 0) {
+            sampled++;
+            Bid bid = utilityBands.getRandomBid(minUtility, random).getBid();
+            domainIndex.encode(bid, encodedBid);
+            double utility = 0.0;
+            for (int i = 0; i < encodedBid.length; i++) {
+                utility += ownUtilities[i][encodedBid[i]];
+            }
+            if (utility > minUtility) best = Math.max(best, evaluator.getNashProduct(utility, encodedBid));
+        }
+        evaluations[0] = sampled;
+        return best;
+    }
+}
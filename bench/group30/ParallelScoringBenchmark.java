@@ -0,0 +1,103 @@
+package group30;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import negotiator.Domain;
+import negotiator.DomainImpl;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * Benchmark of the exhaustive search by the size of the slice of outcomes it scores, on domains in
+ * genius/etc/templates. For each slice it reports the n# of bids scored, the time per search, whether the
+ * outcomes were scored in parallel, and the break-even size ParallelOutcomeScorer measured so far. Slices above
+ * 20000 outcomes are searched by branch and bound, unless -Dgroup30.parallel.exhaustive=N lets the search score
+ * up to N outcomes exhaustively while parallel scoring pays off. Run it once as is and once with
+ * -Dgroup30.parallelism=1 to compare with sequential scoring, and with -Dgroup30.parallel.exhaustive=80000 on
+ * several cores to see whether scoring the 80000 slice in parallel beats branch and bound.
+ *
+ * Run from the genius directory so the template paths resolve:
+ *   javac -cp negosimulator.jar -d ../out/bench ../src/group30/*.java ../bench/group30/*.java
+ *   java -cp negosimulator.jar:../out/bench group30.ParallelScoringBenchmark
+ */
+public class ParallelScoringBenchmark {
+
+    // Domain file followed by the profiles of us and the opponents
+    private static String[][] DOMAINS = {
+            {"etc/templates/ANAC2015/group1-university/University.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util1.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util2.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util3.xml"},
+            {"etc/templates/AMPOvsCity/ampo_vs_city_template.xml",
+                    "etc/templates/AMPOvsCity/ampo_vs_city_ampo_space.xml",
+                    "etc/templates/AMPOvsCity/ampo_vs_city_city_space.xml"},
+    };
+
+    // n# of outcomes in the slices searched, the last one exhaustively only if group30.parallel.exhaustive allows
+    private static int[] SLICE_SIZES = {256, 1024, 4096, 20000, 80000};
+
+    // n# of searches per slice, the first half warms up
+    private static int SEARCHES = 400;
+
+    // n# of offers of each opponent
+    private static int HISTORY_LENGTH = 100;
+
+    private static Random random = new Random(30);
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("parallelism " + ParallelOutcomeScorer.getParallelism());
+        System.out.println(String.format("%-22s %10s %10s %12s %10s %16s", "domain", "slice", "outcomes", "us/search",
+                "parallel", "break-even"));
+
+        for (String[] files : DOMAINS) {
+            Domain domain = new DomainImpl(files[0]);
+            AdditiveUtilitySpace[] profiles = new AdditiveUtilitySpace[files.length - 1];
+            for (int i = 0; i < profiles.length; i++) {
+                profiles[i] = new AdditiveUtilitySpace(domain, files[i + 1]);
+            }
+            String name = files[0].substring(files[0].lastIndexOf('/') + 1).replace(".xml", "");
+            benchmarkDomain(name, domain, profiles);
+        }
+    }
+
+    /**
+     * Search every slice size on one domain
+     */
+    private static void benchmarkDomain(String name, Domain domain, AdditiveUtilitySpace[] profiles) {
+        DomainIndex domainIndex = new DomainIndex(domain);
+        LazyOutcomeSpace outcomeSpace = new LazyOutcomeSpace(domainIndex, profiles[0]);
+
+        // opponents offer bids that are good for themselves
+        List<OpponentModel> models = new ArrayList<>();
+        for (int p = 1; p < profiles.length; p++) {
+            LazyOutcomeSpace opponentSpace = new LazyOutcomeSpace(domainIndex, profiles[p]);
+            OpponentModel model = new OpponentModel(domainIndex);
+            for (int i = 0; i < HISTORY_LENGTH; i++) {
+                model.addBid(opponentSpace.getBidNearUtility(0.6 + 0.4 * random.nextDouble()).getBid());
+            }
+            models.add(model);
+        }
+
+        NashBidSearch search = new NashBidSearch(outcomeSpace);
+        for (int sliceSize : SLICE_SIZES) {
+            // the min utility is the utility of the first outcome left out
+            if (outcomeSpace.countOutcomesAbove(-1, sliceSize + 1) <= sliceSize) continue;
+            double minUtility = outcomeSpace.getUtility(sliceSize);
+
+            long total = 0;
+            int parallel = 0;
+            for (int s = 0; s < SEARCHES; s++) {
+                long start = System.nanoTime();
+                search.search(minUtility, models, 1);
+                if (s < SEARCHES / 2) continue;
+                total += System.nanoTime() - start;
+                if (search.isParallel()) parallel++;
+            }
+            int measured = SEARCHES - SEARCHES / 2;
+            double breakEven = ParallelOutcomeScorer.getBreakEvenOutcomes();
+            System.out.println(String.format("%-22s %10d %10d %12.1f %9.0f%% %16s", name, sliceSize,
+                    search.getBidsEvaluated(), total / 1e3 / measured, 100.0 * parallel / measured,
+                    breakEven == Double.MAX_VALUE ? "-" : String.format("%.0f", breakEven)));
+        }
+    }
+}
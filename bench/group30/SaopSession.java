@@ -0,0 +1,326 @@
+package group30;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import negotiator.AgentID;
+import negotiator.Bid;
+import negotiator.BidIterator;
+import negotiator.Deadline;
+import negotiator.DeadlineType;
+import negotiator.actions.Accept;
+import negotiator.actions.Action;
+import negotiator.actions.EndNegotiation;
+import negotiator.actions.Offer;
+import negotiator.parties.NegotiationInfo;
+import negotiator.parties.NegotiationParty;
+import negotiator.persistent.DefaultPersistentDataContainer;
+import negotiator.persistent.PersistentDataType;
+import negotiator.timeline.ContinuousTimeline;
+import negotiator.timeline.DiscreteTimeline;
+import negotiator.timeline.Timeline;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * One headless session of the Stacked Alternating Offers Protocol.
+ * Every round each party takes a turn to offer, accept the current offer or end the negotiation,
+ * and every other party is told about it. An offer is agreed once all other parties accepted it in a row.
+ * The session owns its parties, timeline and utility spaces, so sessions can run on different threads.
+ */
+public class SaopSession {
+
+    // Domains with more outcomes than this don't get pareto and nash distances
+    private static long MAX_OUTCOMES_FOR_METRICS = 200000;
+
+    // Pareto frontier and nash point of each combination of profiles, shared by all sessions
+    private static Map<String, double[][]> outcomeMetrics = new ConcurrentHashMap<>();
+
+    // Session to run
+    private String[] partyClasses;
+    private String[] partyNames;
+    private String[] profileFiles;
+    private String domainFile;
+    private Deadline deadline;
+    private long seed;
+
+    // Writes every action in the Log-Session csv format, null to not log actions
+    private SessionLogger actionLogger;
+
+    // Results, see the getters
+    private double runTime;
+    private int round;
+    private String exception = "";
+    private Bid agreement;
+    private boolean discounted;
+    private double agreementTime;
+    private double[] utilities;
+    private double[] discountedUtilities;
+    private double distanceToPareto = Double.NaN;
+    private double distanceToNash = Double.NaN;
+
+
+    /*FIELD GETTERS */
+
+    public String[] getPartyNames() {
+        return this.partyNames;
+    }
+
+    public String[] getProfileFiles() {
+        return this.profileFiles;
+    }
+
+    public SessionLogger getActionLogger() {
+        return this.actionLogger;
+    }
+
+    public Deadline getDeadline() {
+        return this.deadline;
+    }
+
+    public double getRunTime() {
+        return this.runTime;
+    }
+
+    public int getRound() {
+        return this.round;
+    }
+
+    public String getException() {
+        return this.exception;
+    }
+
+    public Bid getAgreement() {
+        return this.agreement;
+    }
+
+    public boolean isDiscounted() {
+        return this.discounted;
+    }
+
+    public double[] getUtilities() {
+        return this.utilities;
+    }
+
+    public double[] getDiscountedUtilities() {
+        return this.discountedUtilities;
+    }
+
+    public double getDistanceToPareto() {
+        return this.distanceToPareto;
+    }
+
+    public double getDistanceToNash() {
+        return this.distanceToNash;
+    }
+
+    /**
+     * Constructor function
+     * @param partyClasses class name of each party
+     * @param partyNames name of each party in the logs, e.g. Agent30@4
+     * @param profileFiles utility space file of each party
+     * @param domainFile domain file of the profiles
+     * @param deadline deadline of the session
+     * @param seed seed of the parties' random generators
+     */
+    public SaopSession(String[] partyClasses, String[] partyNames, String[] profileFiles, String domainFile,
+                       Deadline deadline, long seed) {
+        this.partyClasses = partyClasses;
+        this.partyNames = partyNames;
+        this.profileFiles = profileFiles;
+        this.domainFile = domainFile;
+        this.deadline = deadline;
+        this.seed = seed;
+    }
+
+    /**
+     * @param actionLogger logger to write every action of the session to, null to not log actions
+     */
+    public void setActionLogger(SessionLogger actionLogger) {
+        this.actionLogger = actionLogger;
+    }
+
+    /**
+     * Run the session to the end. Exceptions of the parties end the session and are kept as its result.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        int parties = this.partyClasses.length;
+        AdditiveUtilitySpace[] utilitySpaces = new AdditiveUtilitySpace[parties];
+        Random random = new Random(this.seed);
+
+        try {
+            for (int i = 0; i < parties; i++) {
+                utilitySpaces[i] = TournamentRunner.loadUtilitySpace(this.domainFile, this.profileFiles[i]);
+                this.discounted |= utilitySpaces[i].isDiscounted();
+            }
+
+            Timeline timeline = this.deadline.getType() == DeadlineType.TIME
+                    ? new ContinuousTimeline(this.deadline.getValue())
+                    : new DiscreteTimeline(this.deadline.getValue());
+
+            // new instances for every session
+            NegotiationParty[] negotiationParties = new NegotiationParty[parties];
+            AgentID[] ids = new AgentID[parties];
+            for (int i = 0; i < parties; i++) {
+                ids[i] = new AgentID(this.partyNames[i]);
+                negotiationParties[i] = (NegotiationParty) Class.forName(this.partyClasses[i])
+                        .getDeclaredConstructor().newInstance();
+                negotiationParties[i].init(new NegotiationInfo(utilitySpaces[i], this.deadline, timeline,
+                        random.nextLong(), ids[i], new DefaultPersistentDataContainer(null, PersistentDataType.DISABLED)));
+            }
+
+            negotiate(negotiationParties, ids, timeline);
+            this.agreementTime = timeline.getTime();
+
+            for (NegotiationParty party : negotiationParties) {
+                party.negotiationEnded(this.agreement);
+            }
+        } catch (Exception e) {
+            this.exception = e.toString().replace(';', ',');
+        }
+
+        this.runTime = (System.nanoTime() - start) / 1e9;
+        setUtilities(utilitySpaces);
+    }
+
+    /**
+     * Let the parties take turns until an offer is agreed, someone ends the negotiation or the deadline passes
+     */
+    private void negotiate(NegotiationParty[] parties, AgentID[] ids, Timeline timeline) {
+        List<Class<? extends Action>> firstActions = new ArrayList<>();
+        firstActions.add(Offer.class);
+        firstActions.add(EndNegotiation.class);
+        List<Class<? extends Action>> actions = new ArrayList<>(firstActions);
+        actions.add(Accept.class);
+
+        Bid currentOffer = null;
+        int accepts = 0;
+
+        for (this.round = 1; ; this.round++) {
+            for (int turn = 0; turn < parties.length; turn++) {
+                if (timeline.getTime() >= 1.0) return;
+
+                Action action = parties[turn].chooseAction(currentOffer == null ? firstActions : actions);
+                if (this.actionLogger != null) {
+                    this.actionLogger.logAction(this.round, turn + 1, timeline.getTime(), this.partyNames[turn], action);
+                }
+
+                if (action instanceof Offer) {
+                    currentOffer = ((Offer) action).getBid();
+                    accepts = 0;
+                } else if (action instanceof Accept && currentOffer != null) {
+                    accepts++;
+                } else {
+                    // ended or invalid action, no agreement
+                    return;
+                }
+
+                // tell everyone else
+                for (int other = 0; other < parties.length; other++) {
+                    if (other != turn) parties[other].receiveMessage(ids[turn], action);
+                }
+
+                if (accepts == parties.length - 1) {
+                    this.agreement = currentOffer;
+                    return;
+                }
+            }
+            if (timeline instanceof DiscreteTimeline) ((DiscreteTimeline) timeline).increment();
+        }
+    }
+
+    /**
+     * Utilities of the outcome for each party, and distances to the pareto frontier and nash point
+     */
+    private void setUtilities(AdditiveUtilitySpace[] utilitySpaces) {
+        int parties = utilitySpaces.length;
+        this.utilities = new double[parties];
+        this.discountedUtilities = new double[parties];
+        if (utilitySpaces[parties - 1] == null) return;
+
+        for (int i = 0; i < parties; i++) {
+            if (this.agreement == null) {
+                this.utilities[i] = utilitySpaces[i].getReservationValueUndiscounted();
+                this.discountedUtilities[i] = utilitySpaces[i].getReservationValueWithDiscount(this.agreementTime);
+            } else {
+                this.utilities[i] = utilitySpaces[i].getUtility(this.agreement);
+                this.discountedUtilities[i] = utilitySpaces[i].getUtilityWithDiscount(this.agreement, this.agreementTime);
+            }
+        }
+
+        double[][] metrics = getOutcomeMetrics(utilitySpaces);
+        if (metrics == null) return;
+
+        // first point is the nash point, the others the pareto frontier
+        this.distanceToNash = distance(this.utilities, metrics[0]);
+        this.distanceToPareto = Double.MAX_VALUE;
+        for (int i = 1; i < metrics.length; i++) {
+            this.distanceToPareto = Math.min(this.distanceToPareto, distance(this.utilities, metrics[i]));
+        }
+    }
+
+    /**
+     * @return nash point followed by the pareto frontier of the profiles, computed once per combination
+     */
+    private double[][] getOutcomeMetrics(AdditiveUtilitySpace[] utilitySpaces) {
+        if (utilitySpaces[0].getDomain().getNumberOfPossibleBids() > MAX_OUTCOMES_FOR_METRICS) return null;
+        return outcomeMetrics.computeIfAbsent(String.join(";", this.profileFiles), key -> {
+            int parties = utilitySpaces.length;
+            List<double[]> outcomes = new ArrayList<>();
+            BidIterator bids = new BidIterator(utilitySpaces[0].getDomain());
+            while (bids.hasNext()) {
+                Bid bid = bids.next();
+                double[] point = new double[parties];
+                for (int i = 0; i < parties; i++) point[i] = utilitySpaces[i].getUtility(bid);
+                outcomes.add(point);
+            }
+
+            // nash point maximises the product of utilities above the reservation values
+            double[] nash = outcomes.get(0);
+            double bestProduct = -1;
+            for (double[] point : outcomes) {
+                double product = 1;
+                for (int i = 0; i < parties; i++) {
+                    product *= Math.max(0, point[i] - utilitySpaces[i].getReservationValueUndiscounted());
+                }
+                if (product > bestProduct) {
+                    bestProduct = product;
+                    nash = point;
+                }
+            }
+
+            // pareto frontier, sorted on the first utility so only earlier points can dominate a point
+            outcomes.sort((point1, point2) -> Double.compare(point2[0], point1[0]));
+            List<double[]> frontier = new ArrayList<>();
+            frontier.add(nash);
+            for (double[] point : outcomes) {
+                boolean dominated = false;
+                for (int f = 1; f < frontier.size() && !dominated; f++) {
+                    dominated = dominates(frontier.get(f), point);
+                }
+                if (!dominated) frontier.add(point);
+            }
+            return frontier.toArray(new double[0][]);
+        });
+    }
+
+    private static boolean dominates(double[] point1, double[] point2) {
+        boolean better = false;
+        for (int i = 0; i < point1.length; i++) {
+            if (point1[i] < point2[i]) return false;
+            if (point1[i] > point2[i]) better = true;
+        }
+        return better || Arrays.equals(point1, point2);
+    }
+
+    private static double distance(double[] point1, double[] point2) {
+        double sum = 0;
+        for (int i = 0; i < point1.length; i++) {
+            sum += (point1[i] - point2[i]) * (point1[i] - point2[i]);
+        }
+        return Math.sqrt(sum);
+    }
+}
@@ -0,0 +1,334 @@
+package group30;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.parsers.DocumentBuilderFactory;
+import negotiator.Deadline;
+import negotiator.DeadlineType;
+import negotiator.Domain;
+import negotiator.DomainImpl;
+import negotiator.utility.AdditiveUtilitySpace;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Runs the tournaments of multilateraltournament.xml without the Genius GUI, with the sessions spread over
+ * a pool of threads. Every session gets new party instances and its own utility spaces, so they don't share state.
+ * Writes one tournament-yyyyMMdd-HHmmss-domain.log.csv per tournament in the same format as Genius.
+ *
+ * Only the Stacked Alternating Offers Protocol is supported. Run from the genius directory:
+ *   javac -cp negosimulator.jar -d ../out/bench ../src/group30/*.java ../bench/group30/*.java
+ *   java -cp negosimulator.jar:../out/bench group30.TournamentRunner [-threads N] [-sessionlogs] [multilateraltournament.xml]
+ * With -sessionlogs every session also writes the actions of the parties to a Log-Session csv.
+ */
+public class TournamentRunner {
+
+    // Protocol the sessions are run with
+    private static String PROTOCOL = "negotiator.protocol.StackedAlternatingOffersProtocol";
+
+    // Domain of each profile, from the domain repository
+    private static String DOMAIN_REPOSITORY = "domainrepository.xml";
+
+    // Directory the logs are written to
+    private static String LOG_DIRECTORY = "log";
+
+    // Domains loaded so far, shared by the sessions
+    private static Map<String, Domain> domains = new HashMap<>();
+
+    // Profiles loaded so far, every session gets a copy
+    private static Map<String, AdditiveUtilitySpace> utilitySpaces = new HashMap<>();
+
+    // n# of parties created, to give every party a unique name
+    private static int partiesCreated = 0;
+
+    // Write a Log-Session csv of every session
+    private static boolean sessionLogs = false;
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String configuration = "multilateraltournament.xml";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-sessionlogs")) sessionLogs = true;
+            else configuration = args[i];
+        }
+
+        Map<String, String> profileDomains = readDomainRepository(DOMAIN_REPOSITORY);
+        NodeList tournaments = parse(configuration).getElementsByTagName("tournament");
+        for (int t = 0; t < tournaments.getLength(); t++) {
+            runTournament((Element) tournaments.item(t), profileDomains, threads);
+        }
+    }
+
+    /**
+     * Run every session of a tournament and write its log
+     * @param tournament tournament element of the configuration
+     * @param profileDomains domain file of each profile file
+     * @param threads n# of sessions run at the same time
+     */
+    private static void runTournament(Element tournament, Map<String, String> profileDomains, int threads)
+            throws Exception {
+        String protocol = ((Element) tournament.getElementsByTagName("protocolItem").item(0)).getAttribute("classPath");
+        if (!protocol.equals(PROTOCOL)) {
+            System.out.println("Skipping tournament with unsupported protocol " + protocol);
+            return;
+        }
+
+        Element deadlineElement = (Element) tournament.getElementsByTagName("deadline").item(0);
+        Deadline deadline = new Deadline(Integer.parseInt(getText(deadlineElement, "value")),
+                DeadlineType.valueOf(getText(deadlineElement, "type")));
+        int repeats = Integer.parseInt(getText(tournament, "repeats"));
+        int partiesPerSession = Integer.parseInt(getText(tournament, "numberOfPartiesPerSession"));
+        boolean repetitionAllowed = Boolean.parseBoolean(getText(tournament, "repetitionAllowed"));
+
+        List<String> partyClasses = new ArrayList<>();
+        NodeList parties = tournament.getElementsByTagName("party");
+        for (int i = 0; i < parties.getLength(); i++) {
+            partyClasses.add(getClassName(((Element) parties.item(i)).getAttribute("classPath")));
+        }
+        List<String> profiles = new ArrayList<>();
+        NodeList items = ((Element) tournament.getElementsByTagName("partyProfileItems").item(0))
+                .getElementsByTagName("item");
+        for (int i = 0; i < items.getLength(); i++) {
+            profiles.add(items.item(i).getAttributes().getNamedItem("url").getNodeValue().replace("file:", ""));
+        }
+        String domainFile = profileDomains.get(profiles.get(0));
+        if (domainFile == null) throw new IllegalArgumentException("No domain found for " + profiles.get(0));
+
+        // every combination of profiles with every arrangement of parties, repeated
+        List<SaopSession> sessions = new ArrayList<>();
+        List<int[]> profileCombinations = new ArrayList<>();
+        combinations(profiles.size(), partiesPerSession, 0, new int[partiesPerSession], 0, profileCombinations);
+        List<int[]> partyArrangements = new ArrayList<>();
+        arrangements(partyClasses.size(), partiesPerSession, repetitionAllowed, new int[partiesPerSession], 0,
+                partyArrangements);
+        for (int repeat = 0; repeat < repeats; repeat++) {
+            for (int[] profileCombination : profileCombinations) {
+                for (int[] partyArrangement : partyArrangements) {
+                    String[] sessionClasses = new String[partiesPerSession];
+                    String[] sessionNames = new String[partiesPerSession];
+                    String[] sessionProfiles = new String[partiesPerSession];
+                    for (int i = 0; i < partiesPerSession; i++) {
+                        sessionClasses[i] = partyClasses.get(partyArrangement[i]);
+                        sessionNames[i] = getPartyName(sessionClasses[i], parties, partyArrangement[i]);
+                        sessionProfiles[i] = profiles.get(profileCombination[i]);
+                    }
+                    sessions.add(new SaopSession(sessionClasses, sessionNames, sessionProfiles, domainFile,
+                            deadline, sessions.size()));
+                }
+            }
+        }
+
+        // run the sessions
+        long start = System.nanoTime();
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        new File(LOG_DIRECTORY).mkdirs();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int s = 0; s < sessions.size(); s++) {
+            SaopSession session = sessions.get(s);
+            String sessionLog = LOG_DIRECTORY + "/Log-Session_" + timestamp + "-" + s + ".csv";
+            results.add(pool.submit(() -> {
+                if (sessionLogs) {
+                    try {
+                        session.setActionLogger(new SessionLogger(new FileWriter(sessionLog),
+                                SessionLogger.Level.INFO));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                session.run();
+                if (session.getActionLogger() != null) session.getActionLogger().close();
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        pool.shutdown();
+        double wallTime = (System.nanoTime() - start) / 1e9;
+
+        String domainName = new File(domainFile).getName().replace(".xml", "");
+        String logFile = LOG_DIRECTORY + "/tournament-" + timestamp + "-" + domainName + ".log.csv";
+        writeLog(logFile, sessions, partiesPerSession);
+        if (AgentMetrics.isEnabled()) {
+            AgentMetrics.takeTournamentMetrics().write(logFile.replace(".log.csv", ".metrics.txt"));
+        }
+
+        double sessionTime = 0;
+        for (SaopSession session : sessions) {
+            sessionTime += session.getRunTime();
+        }
+        System.out.println(String.format(Locale.ROOT,
+                "%d sessions on %s in %.3fs with %d threads on %d cores, %.3fs of sessions, speedup %.2f, log %s",
+                sessions.size(), domainName, wallTime, threads, Runtime.getRuntime().availableProcessors(),
+                sessionTime, sessionTime / wallTime, logFile));
+    }
+
+    /**
+     * Write the results of the sessions in the Genius tournament log format
+     */
+    private static void writeLog(String logFile, List<SaopSession> sessions, int partiesPerSession) throws Exception {
+        new File(logFile).getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(logFile, "UTF-8")) {
+            writer.println("sep=;");
+            StringBuilder header = new StringBuilder("Run time (s);Round;Exception;deadline;Agreement;Discounted;"
+                    + "#agreeing;min.util.;max.util.;Dist. to Pareto;Dist. to Nash;Social Welfare");
+            for (String column : new String[]{"Agent ", "Utility ", "Disc. Util. ", "Profile "}) {
+                for (int i = 1; i <= partiesPerSession; i++) header.append(';').append(column).append(i);
+            }
+            writer.println(header);
+
+            for (SaopSession session : sessions) {
+                double[] utilities = session.getUtilities();
+                double min = Double.MAX_VALUE;
+                double max = -Double.MAX_VALUE;
+                double socialWelfare = 0;
+                for (double utility : utilities) {
+                    min = Math.min(min, utility);
+                    max = Math.max(max, utility);
+                    socialWelfare += utility;
+                }
+                boolean agreement = session.getAgreement() != null;
+                Deadline deadline = session.getDeadline();
+
+                StringBuilder line = new StringBuilder(String.format(Locale.ROOT,
+                        "%.3f;%d;%s;%s;%s;%s;%d;%.5f;%.5f;%.5f;%.5f;%.5f",
+                        session.getRunTime(), session.getRound(), session.getException(),
+                        deadline.getValue() + (deadline.getType() == DeadlineType.TIME ? "s" : " rounds"),
+                        agreement ? "Yes" : "No", session.isDiscounted() ? "Yes" : "No",
+                        agreement ? partiesPerSession : 0, min, max,
+                        session.getDistanceToPareto(), session.getDistanceToNash(), socialWelfare));
+                for (String name : session.getPartyNames()) line.append(';').append(name);
+                for (double utility : utilities) line.append(';').append(utility);
+                for (double utility : session.getDiscountedUtilities()) line.append(';').append(utility);
+                for (String profile : session.getProfileFiles()) line.append(';').append(new File(profile).getName());
+                writer.println(line);
+            }
+        }
+    }
+
+    /**
+     * Load a domain once, parsing is the slow part of creating a utility space
+     * @param domainFile domain file
+     * @return domain of the file
+     */
+    static Domain loadDomain(String domainFile) throws Exception {
+        synchronized (domains) {
+            Domain domain = domains.get(domainFile);
+            if (domain == null) {
+                domain = new DomainImpl(domainFile);
+                domains.put(domainFile, domain);
+            }
+            return domain;
+        }
+    }
+
+    /**
+     * Load a profile once and give every session its own copy
+     * @param domainFile domain file of the profile
+     * @param profileFile profile file
+     * @return new copy of the profile
+     */
+    static AdditiveUtilitySpace loadUtilitySpace(String domainFile, String profileFile) throws Exception {
+        AdditiveUtilitySpace utilitySpace;
+        synchronized (utilitySpaces) {
+            utilitySpace = utilitySpaces.get(profileFile);
+            if (utilitySpace == null) {
+                utilitySpace = new AdditiveUtilitySpace(loadDomain(domainFile), profileFile);
+                utilitySpaces.put(profileFile, utilitySpace);
+            }
+        }
+        return new AdditiveUtilitySpace(utilitySpace);
+    }
+
+    /**
+     * @return domain file of each profile file in the domain repository
+     */
+    private static Map<String, String> readDomainRepository(String repositoryFile) throws Exception {
+        Map<String, String> profileDomains = new HashMap<>();
+        NodeList domainItems = parse(repositoryFile).getElementsByTagName("domainRepItem");
+        for (int i = 0; i < domainItems.getLength(); i++) {
+            Element domainItem = (Element) domainItems.item(i);
+            if (!domainItem.hasAttribute("url")) continue;
+            NodeList profiles = domainItem.getElementsByTagName("profile");
+            for (int j = 0; j < profiles.getLength(); j++) {
+                profileDomains.put(((Element) profiles.item(j)).getAttribute("url").replace("file:", ""),
+                        domainItem.getAttribute("url").replace("file:", ""));
+            }
+        }
+        return profileDomains;
+    }
+
+    private static Document parse(String file) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(file));
+    }
+
+    private static String getText(Element element, String tag) {
+        return element.getElementsByTagName(tag).item(0).getTextContent().trim();
+    }
+
+    /**
+     * @return class name of a party class path, which is a file path for parties loaded from a .class file
+     */
+    private static String getClassName(String classPath) {
+        if (!classPath.endsWith(".class")) return classPath;
+        File file = new File(classPath);
+        return file.getParentFile().getName() + "." + file.getName().replace(".class", "");
+    }
+
+    /**
+     * @return unique name of a party as in the Genius logs, e.g. group30.Agent30@4
+     */
+    private static synchronized String getPartyName(String className, NodeList parties, int party) {
+        String classPath = ((Element) parties.item(party)).getAttribute("classPath");
+        String name = classPath.endsWith(".class") ? className : className.substring(className.lastIndexOf('.') + 1);
+        return name + "@" + partiesCreated++;
+    }
+
+    /**
+     * Add every sorted combination of k out of n indices
+     */
+    private static void combinations(int n, int k, int from, int[] current, int size, List<int[]> result) {
+        if (size == k) {
+            result.add(current.clone());
+            return;
+        }
+        for (int i = from; i < n; i++) {
+            current[size] = i;
+            combinations(n, k, i + 1, current, size + 1, result);
+        }
+    }
+
+    /**
+     * Add every ordered arrangement of k out of n indices, with or without the same index more than once
+     */
+    private static void arrangements(int n, int k, boolean repetition, int[] current, int size, List<int[]> result) {
+        if (size == k) {
+            result.add(current.clone());
+            return;
+        }
+        outer:
+        for (int i = 0; i < n; i++) {
+            if (!repetition) {
+                for (int j = 0; j < size; j++) {
+                    if (current[j] == i) continue outer;
+                }
+            }
+            current[size] = i;
+            arrangements(n, k, repetition, current, size + 1, result);
+        }
+    }
+}
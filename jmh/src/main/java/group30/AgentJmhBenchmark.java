@@ -0,0 +1,246 @@
+package group30;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import negotiator.AgentID;
+import negotiator.Bid;
+import negotiator.Deadline;
+import negotiator.DeadlineType;
+import negotiator.Domain;
+import negotiator.DomainImpl;
+import negotiator.actions.Offer;
+import negotiator.parties.NegotiationInfo;
+import negotiator.persistent.DefaultPersistentDataContainer;
+import negotiator.persistent.PersistentDataType;
+import negotiator.timeline.DiscreteTimeline;
+import negotiator.utility.AdditiveUtilitySpace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the hot paths of the agent on the real domains in genius/etc/templates, for each domain
+ * and opponent history length: createBid, getNashProduct, getUtility, getOpponentUtility, hardHeaded,
+ * scoring blocks of bids against many opponents and OpponentModel.addBid.
+ * The agent and opponent models are set up once per trial, except the model bids are added to, which is
+ * rebuilt before every batch of adds so its history stays within BATCH_SIZE bids of historyLength.
+ *
+ * Build with mvn -B package from the root of the repository, then run from the genius directory so the
+ * template paths resolve, with -prof gc for the bytes allocated per operation (gc.alloc.rate.norm):
+ *   java -cp ../jmh/target/benchmarks.jar:negosimulator.jar org.openjdk.jmh.Main AgentJmhBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AgentJmhBenchmark {
+
+    // Domain file followed by the profiles of us and the opponents
+    private static String[][] DOMAINS = {
+            {"etc/templates/partydomain/party_domain.xml",
+                    "etc/templates/partydomain/party1_utility.xml",
+                    "etc/templates/partydomain/party2_utility.xml",
+                    "etc/templates/partydomain/party3_utility.xml"},
+            {"etc/templates/laptopdomain/laptop_domain.xml",
+                    "etc/templates/laptopdomain/laptop_buyer_utility.xml",
+                    "etc/templates/laptopdomain/laptop_seller_utility.xml",
+                    "etc/templates/laptopdomain/laptop_seller_utility.xml"},
+            {"etc/templates/ANAC2015/group1-university/University.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util1.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util2.xml",
+                    "etc/templates/ANAC2015/group1-university/University_util3.xml"},
+            {"etc/templates/ANAC2016/Maxoops/WindFarm.xml",
+                    "etc/templates/ANAC2016/Maxoops/WindFarm_util1.xml",
+                    "etc/templates/ANAC2016/Maxoops/WindFarm_util2.xml",
+                    "etc/templates/ANAC2016/Maxoops/WindFarm_util3.xml"},
+    };
+
+    // n# of opponents for scoring blocks of bids, the opponent models are repeated up to it
+    private static int MANY_OPPONENTS = 20;
+
+    // n# of bids per scored block
+    private static int BLOCK_SIZE = 64;
+
+    // n# of bids added to the growing model between two rebuilds, the addBid score is for all of them
+    private static final int BATCH_SIZE = 1000;
+
+    // Name of the domain file, without .xml
+    @Param({"party_domain", "laptop_domain", "University", "WindFarm"})
+    private String domain;
+
+    // n# of offers of each opponent
+    @Param({"10", "100", "1000", "10000"})
+    private int historyLength;
+
+    private Agent30 agent;
+    private DomainIndex domainIndex;
+    private OpponentModel model;
+    private List<Bid> history;
+    private Bid[] bids;
+    private int[][] encodedBids;
+    private NashProductEvaluator evaluator;
+    private int[][] blocks;
+    private double[] blockUtilities;
+    private double[] blockScores;
+    private int i;
+
+    /**
+     * Set up the agent half way through the negotiation with opponents that made historyLength offers each
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String[] files = getFiles(this.domain);
+        Domain domain = new DomainImpl(files[0]);
+        AdditiveUtilitySpace[] profiles = new AdditiveUtilitySpace[files.length - 1];
+        for (int p = 0; p < profiles.length; p++) {
+            profiles[p] = new AdditiveUtilitySpace(domain, files[p + 1]);
+        }
+        Random random = new Random(30);
+
+        // the agent half way through the negotiation, past the max utility offers
+        DiscreteTimeline timeline = new DiscreteTimeline(2 * this.historyLength);
+        timeline.setcRound(this.historyLength);
+        this.agent = new Agent30();
+        this.agent.init(new NegotiationInfo(profiles[0], new Deadline(2 * this.historyLength, DeadlineType.ROUND),
+                timeline, random.nextLong(), new AgentID("Agent30"),
+                new DefaultPersistentDataContainer(null, PersistentDataType.DISABLED)));
+
+        // opponents offer bids that are good for themselves
+        this.domainIndex = new DomainIndex(domain);
+        List<OpponentModel> models = new ArrayList<>();
+        for (int p = 1; p < profiles.length; p++) {
+            AgentID opponent = new AgentID("Opponent" + p);
+            LazyOutcomeSpace opponentSpace = new LazyOutcomeSpace(this.domainIndex, profiles[p]);
+            List<Bid> history = new ArrayList<>(this.historyLength);
+            for (int r = 0; r < this.historyLength; r++) {
+                Bid bid = opponentSpace.getBidNearUtility(0.6 + 0.4 * random.nextDouble()).getBid();
+                this.agent.receiveMessage(opponent, new Offer(opponent, bid));
+                history.add(bid);
+            }
+            models.add(newModel(this.domainIndex, history));
+            if (p == 1) this.history = history;
+        }
+        this.model = models.get(0);
+
+        // candidate bids to score
+        this.bids = new Bid[1024];
+        this.encodedBids = new int[this.bids.length][];
+        for (int b = 0; b < this.bids.length; b++) {
+            this.bids[b] = domain.getRandomBid(random);
+            this.encodedBids[b] = this.domainIndex.encode(this.bids[b]);
+        }
+
+        // blocks of the candidate bids, with made up utilities for us so none is dropped early
+        List<OpponentModel> manyModels = new ArrayList<>();
+        for (int p = 0; p < MANY_OPPONENTS; p++) {
+            manyModels.add(models.get(p % models.size()));
+        }
+        this.evaluator = new NashProductEvaluator(this.domainIndex);
+        this.evaluator.update(manyModels);
+        int totalIssues = this.domainIndex.getTotalIssues();
+        this.blocks = new int[this.bids.length / BLOCK_SIZE][BLOCK_SIZE * totalIssues];
+        for (int b = 0; b < this.bids.length; b++) {
+            System.arraycopy(this.encodedBids[b], 0, this.blocks[b / BLOCK_SIZE], (b % BLOCK_SIZE) * totalIssues,
+                    totalIssues);
+        }
+        this.blockUtilities = new double[BLOCK_SIZE];
+        Arrays.fill(this.blockUtilities, 1.0);
+        this.blockScores = new double[BLOCK_SIZE];
+    }
+
+    @Benchmark
+    public Bid createBid() {
+        return this.agent.createBid();
+    }
+
+    @Benchmark
+    public double getNashProduct() {
+        return this.agent.getNashProduct(this.bids[this.i++ & 1023]);
+    }
+
+    @Benchmark
+    public double getUtility() {
+        return this.agent.getUtility(this.bids[this.i++ & 1023]);
+    }
+
+    @Benchmark
+    public double getOpponentUtility() {
+        return this.model.getOpponentUtility(this.encodedBids[this.i++ & 1023]);
+    }
+
+    @Benchmark
+    public double getOpponentUtilityOfBid() {
+        return this.model.getOpponentUtility(this.bids[this.i++ & 1023]);
+    }
+
+    @Benchmark
+    public Double hardHeaded() {
+        return this.model.hardHeaded(OpponentModel.RECENT_ROUNDS);
+    }
+
+    @Benchmark
+    public double scoreBlockOfManyOpponents() {
+        return this.evaluator.scoreBlock(this.blocks[this.i++ % this.blocks.length], this.blockUtilities,
+                BLOCK_SIZE, -1, this.blockScores);
+    }
+
+    /**
+     * Time to add BATCH_SIZE bids to a model that was offered historyLength bids
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 50, batchSize = BATCH_SIZE)
+    @Measurement(iterations = 200, batchSize = BATCH_SIZE)
+    public void addBid(GrowingModel growingModel) {
+        growingModel.model.addBid(this.bids[this.i++ & 1023]);
+    }
+
+    /**
+     * Opponent model bids are added to, rebuilt from the first opponent's offers before every batch of adds
+     */
+    @State(Scope.Thread)
+    public static class GrowingModel {
+        private OpponentModel model;
+
+        @Setup(Level.Iteration)
+        public void reset(AgentJmhBenchmark benchmark) {
+            this.model = newModel(benchmark.domainIndex, benchmark.history);
+        }
+    }
+
+    /**
+     * @return new opponent model that was offered the bids
+     */
+    private static OpponentModel newModel(DomainIndex domainIndex, List<Bid> history) {
+        OpponentModel model = new OpponentModel(domainIndex);
+        for (Bid bid : history) {
+            model.addBid(bid);
+        }
+        return model;
+    }
+
+    /**
+     * @return domain file followed by the profiles of the domain with the name
+     */
+    private static String[] getFiles(String name) {
+        for (String[] files : DOMAINS) {
+            if (files[0].endsWith("/" + name + ".xml")) return files;
+        }
+        throw new IllegalArgumentException("Unknown domain " + name);
+    }
+}
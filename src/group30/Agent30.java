@@ -1,23 +1,28 @@
 package group30;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import negotiator.AgentID;
 import negotiator.Bid;
 import negotiator.actions.Accept;
 import negotiator.actions.Action;
 import negotiator.actions.Offer;
 import negotiator.bidding.BidDetails;
-import negotiator.boaframework.SortedOutcomeSpace;
 import negotiator.issue.Issue;
 import negotiator.issue.IssueDiscrete;
+import negotiator.issue.Value;
 import negotiator.issue.ValueDiscrete;
 import negotiator.parties.AbstractNegotiationParty;
 import negotiator.parties.NegotiationInfo;
+import negotiator.timeline.TimeLineInfo;
+import negotiator.timeline.Timeline;
 import negotiator.utility.AdditiveUtilitySpace;
 import negotiator.utility.EvaluatorDiscrete;
 
@@ -34,8 +39,15 @@ public class Agent30 extends AbstractNegotiationParty {
     // Our utility of latest received bid
     private double lastReceivedBidUtility;
 
-    // Map of the opponents
-    private HashMap<AgentID, OpponentModel> opponentMap;
+    // Models of the opponents, by index in order of their first message
+    private OpponentRegistry opponents;
+
+    // Nash product of bids with all opponent models, from flat tables
+    private NashProductEvaluator nashProductEvaluator;
+
+    // Search around the opponents' recent offers and our best bids when the exact search runs out of time,
+    // picked by the size of the domain unless the group30.heuristic system property names one
+    private BidSearchHeuristic bidSearchHeuristic;
 
     // Percentage of time in which we'll just keep offering the maximum utility bid
     private static double PERCENTAGE_T_OFFER_MAX_U = 0.2D;
@@ -43,52 +55,269 @@ public class Agent30 extends AbstractNegotiationParty {
     // The max amount of the best bids to save
     private int maxAmountSavedBids = 100;
 
-    // SOS used to choose a bid close to a given utility
-    private SortedOutcomeSpace SOS;
+    // Index of the domain, to encode bids as value indices
+    private DomainIndex domainIndex;
+
+    // Encoded copy of the bid being scored, reused to avoid allocating
+    private int[] encodedBid;
+
+    // Our outcomes in order of utility, generated as far as they are needed and shared with other sessions,
+    // null on domains too large for it (see LazyOutcomeSpace.isSuitable), which are searched by the heuristic alone
+    // without utility bands, exact or speculative search
+    private LazyOutcomeSpace outcomeSpace;
     private Random random;
 
-    // save best bids found while searching
-    private List<BidDetails> bestGeneratedBids = new ArrayList<BidDetails>();
+    // Our utility of a bid from flattened tables, with the latest bids cached
+    private OwnUtilityEvaluator ownUtility;
+
+    // Outcomes split in utility bands, to draw random acceptable bids
+    private UtilityBands utilityBands;
+
+    // Search for the bids with the best nash product above our acceptable utility
+    private NashBidSearch nashBidSearch;
+
+    // Same search started in the background during the opponents' turns, null if disabled
+    private SpeculativeSearch speculativeSearch;
+
+    // save best bids found while searching, by nash product
+    private BestBidsQueue bestGeneratedBids = new BestBidsQueue(maxAmountSavedBids);
+
+    // Opponent utilities of the saved bids, computed again only for the opponents whose model changed
+    private OpponentUtilityCache opponentUtilityCache;
+
+    // Share of the time the opponents take per round that we may take to create a bid
+    private static double TURN_BUDGET_SHARE = 0.25D;
+
+    // Bounds of the time to create a bid in nanoseconds
+    private static long MIN_TURN_BUDGET_NANOS = 1_000_000L;
+    private static long MAX_TURN_BUDGET_NANOS = 50_000_000L;
+
+    // Weight of the latest round in the average time the opponents take per round
+    private static double ROUND_SMOOTHING = 0.125D;
+
+    // Min n# of random bids sampled when the search found no bid in time
+    private static int MIN_RANDOM_BIDS = 10;
+
+    // n# of random bids scored together
+    private static int RANDOM_BLOCK_SIZE = 16;
+
+    // n# of recent offers of each opponent and of our best saved bids the heuristic search starts from
+    private static int HEURISTIC_RECENT_OFFERS = 3;
+    private static int HEURISTIC_SAVED_BIDS = 5;
+
+    // Min n# of bids the heuristic search scores when the search found no bid in time
+    private static int MIN_HEURISTIC_EVALUATIONS = 100;
+
+    // Average time in nanoseconds between the end of our turn and the start of the next one, 0 until measured
+    private double opponentsRoundNanos;
+
+    // Time our last turn ended
+    private long lastTurnEnd;
 
-    // number of bids generated each round to populate bestBids array
-    private int numberBidsToGenerate = 100;
+    // Time the last bid could take, n# of bids it scored and the nash product of the bid found
+    private long turnBudget;
+    private int candidatesEvaluated;
+    private double achievedNashProduct;
 
     int turn;
 
+    // Asynchronous logger, so the agents don't wait on stdout every round
+    private SessionLogger logger = SessionLogger.getLogger();
 
+    // Latencies and counts of the work done each turn
+    private AgentMetrics metrics = new AgentMetrics();
+
+    // Threads building the structures of the agents in the background, shared by all agents in the JVM
+    private static ExecutorService initialisationPool;
+
+    // Building of the structures below the opponent map, started by init
+    private Future<?> initialisation;
+
+    // true once the structures are built and may be used by this thread
+    private boolean initialised;
+
+    // Max utility bid, offered while the structures are being built
+    private Bid maxUtilityBid;
+
+    // Offers received while the structures were being built, by sender with the time they came in,
+    // added to the opponent models after
+    private List<AgentID> pendingSenders = new ArrayList<>();
+    private List<Bid> pendingBids = new ArrayList<>();
+    private List<Double> pendingTimes = new ArrayList<>();
+
+    // Time init was called, to measure the time to our first offer
+    private long initStart;
+
+
+    /**
+     * Start building the structures of the agent in the background, so the first turns only
+     * wait for the max utility bid
+     * @param info information about the negotiation
+     */
     @Override
     public void init(NegotiationInfo info) {
         // initialise class variables
         super.init(info);
-        this.opponentMap = new HashMap<>();
-        this.SOS = new SortedOutcomeSpace(this.utilitySpace);
+        this.initStart = this.metrics.start();
+        this.opponents = new OpponentRegistry();
         this.random = new Random();
+        this.maxUtilityBid = getMaxUtilityBid((AdditiveUtilitySpace) utilitySpace);
+        this.initialisation = getInitialisationPool().submit(this::initialise);
+    }
+
+    /**
+     * @return threads building the structures of the agents, created when first needed
+     */
+    private static synchronized ExecutorService getInitialisationPool() {
+        if (initialisationPool == null) {
+            initialisationPool = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "group30-initialisation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return initialisationPool;
+    }
 
+    /**
+     * Build the domain index, outcome space, evaluators and searches, on a thread of the initialisation pool
+     */
+    private void initialise() {
+        long start = this.metrics.start();
+        this.domainIndex = ProfileCache.getDomainIndex(this.utilitySpace.getDomain());
+        this.encodedBid = new int[this.domainIndex.getTotalIssues()];
 
         AdditiveUtilitySpace additiveUtilitySpace = (AdditiveUtilitySpace) utilitySpace;
+        double[][] ownUtilities;
+        if (LazyOutcomeSpace.isSuitable(this.domainIndex)) {
+            this.outcomeSpace = ProfileCache.getOutcomeSpace(this.domainIndex, additiveUtilitySpace);
+            this.utilityBands = new UtilityBands(this.outcomeSpace);
+            this.nashBidSearch = new NashBidSearch(this.outcomeSpace);
+            if (SpeculativeSearch.isEnabled()) this.speculativeSearch = new SpeculativeSearch(this.outcomeSpace);
+            ownUtilities = this.outcomeSpace.getOwnUtilities();
+        } else {
+            ownUtilities = LazyOutcomeSpace.getOwnUtilities(this.domainIndex, additiveUtilitySpace);
+        }
+        this.ownUtility = new OwnUtilityEvaluator(this.domainIndex, ownUtilities, additiveUtilitySpace);
+        this.nashProductEvaluator = new NashProductEvaluator(this.domainIndex);
+        this.opponentUtilityCache = new OpponentUtilityCache(this.domainIndex, this.nashProductEvaluator);
+        this.bidSearchHeuristic = BidSearchHeuristic.create(System.getProperty("group30.heuristic"),
+                this.domainIndex, ownUtilities, this.nashProductEvaluator, this.random);
         List<Issue> issues = additiveUtilitySpace.getDomain().getIssues();
 
-        // print preferences and weights of each issue in domain
-        for (Issue issue : issues) {
+        // log preferences and weights of each issue in domain
+        if (this.logger.isEnabled(SessionLogger.Level.DEBUG)) {
+            for (Issue issue : issues) {
+                int issueNumber = issue.getNumber();
+                StringBuilder preferences = new StringBuilder(">> " + issue.getName() + " weight: "
+                        + additiveUtilitySpace.getWeight(issueNumber));
+
+                // Assuming discrete issues
+                IssueDiscrete issueDiscrete = (IssueDiscrete) issue;
+                EvaluatorDiscrete evaluatorDiscrete = (EvaluatorDiscrete) additiveUtilitySpace.getEvaluator(issueNumber);
+
+                for (ValueDiscrete valueDiscrete : issueDiscrete.getValues()) {
+                    preferences.append("\n").append(valueDiscrete.getValue());
+                    preferences.append("\nEvaluation(getValue): ").append(evaluatorDiscrete.getValue(valueDiscrete));
+                    try {
+                        preferences.append("\nEvaluation(getEvaluation): ")
+                                .append(evaluatorDiscrete.getEvaluation(valueDiscrete));
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+                this.logger.log(SessionLogger.Level.DEBUG, getPartyId(), preferences.toString());
+            }
+        }
+        this.metrics.stop(AgentMetrics.Timer.INITIALISATION, start);
+    }
+
+    /**
+     * @return true if the structures are built, then adds the offers received while they were being built
+     */
+    private boolean isInitialised() {
+        if (!this.initialised && this.initialisation.isDone()) awaitInitialisation();
+        return this.initialised;
+    }
+
+    /**
+     * Wait until the structures are built and add the offers received while they were being built
+     * to the opponent models
+     */
+    private void awaitInitialisation() {
+        if (this.initialised) return;
+        try {
+            this.initialisation.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            initialise();
+        }
+        this.initialised = true;
+        for (int i = 0; i < this.pendingBids.size(); i++) {
+            Bid bid = this.pendingBids.get(i);
+            updateOpponentModel(this.pendingSenders.get(i), bid, getUtility(bid), this.pendingTimes.get(i));
+        }
+        this.pendingSenders.clear();
+        this.pendingBids.clear();
+        this.pendingTimes.clear();
+    }
+
+    /**
+     * @return bid with our max utility, from the outcome space once it is built
+     */
+    private Bid getMaxBid() {
+        return isInitialised() && this.outcomeSpace != null
+                ? this.outcomeSpace.getMaxBidPossible().getBid() : this.maxUtilityBid;
+    }
+
+    /**
+     * Max utility bid from the best value of each issue, without the outcome space. Values are scored
+     * and ties broken as in LazyOutcomeSpace, so this is the bid of getMaxBidPossible
+     * @param additiveUtilitySpace our utility space
+     * @return bid with our max utility
+     */
+    private static Bid getMaxUtilityBid(AdditiveUtilitySpace additiveUtilitySpace) {
+        HashMap<Integer, Value> bidValues = new HashMap<>();
+        for (Issue issue : additiveUtilitySpace.getDomain().getIssues()) {
             int issueNumber = issue.getNumber();
-            System.out.println(">> " + issue.getName() + " weight: " + additiveUtilitySpace.getWeight(issueNumber));
 
             // Assuming discrete issues
-            IssueDiscrete issueDiscrete = (IssueDiscrete) issue;
             EvaluatorDiscrete evaluatorDiscrete = (EvaluatorDiscrete) additiveUtilitySpace.getEvaluator(issueNumber);
-
-            for (ValueDiscrete valueDiscrete : issueDiscrete.getValues()) {
-                System.out.println(valueDiscrete.getValue());
-                System.out.println("Evaluation(getValue): " + evaluatorDiscrete.getValue(valueDiscrete));
+            List<ValueDiscrete> values = ((IssueDiscrete) issue).getValues();
+            double[] utilities = new double[values.size()];
+            for (int j = 0; j < utilities.length; j++) {
                 try {
-                    System.out.println("Evaluation(getEvaluation): " + evaluatorDiscrete.getEvaluation(valueDiscrete));
+                    utilities[j] = additiveUtilitySpace.getWeight(issueNumber)
+                            * evaluatorDiscrete.getEvaluation(values.get(j));
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
             }
-
+            bidValues.put(issueNumber, values.get(LazyOutcomeSpace.getBestValue(utilities)));
         }
+        return new Bid(additiveUtilitySpace.getDomain(), bidValues);
+    }
 
+    /**
+     * Our utility of a bid, exactly as the utility space computes it but with array lookups
+     * @param bid bid to evaluate
+     * @return undiscounted utility, 0 for no bid
+     */
+    @Override
+    public double getUtility(Bid bid) {
+        if (!this.initialised) return super.getUtility(bid);
+        return this.ownUtility.getUtility(bid);
+    }
+
+    /**
+     * Our utility of a bid discounted to the current time
+     * @param bid bid to evaluate
+     * @return discounted utility, 0 for no bid
+     */
+    @Override
+    public double getUtilityWithDiscount(Bid bid) {
+        if (!this.initialised) return super.getUtilityWithDiscount(bid);
+        return this.ownUtility.getUtilityWithDiscount(bid, getTimeLine().getTime());
     }
 
     /**
@@ -99,6 +328,18 @@ public class Agent30 extends AbstractNegotiationParty {
         return description;
     }
 
+    public long getTurnBudget() {
+        return this.turnBudget;
+    }
+
+    public int getCandidatesEvaluated() {
+        return this.candidatesEvaluated;
+    }
+
+    public double getAchievedNashProduct() {
+        return this.achievedNashProduct;
+    }
+
     /**
      * When this function is called, it is expected that the Party chooses one of the actions from the possible
      * action list and returns an instance of the chosen action.
@@ -107,26 +348,68 @@ public class Agent30 extends AbstractNegotiationParty {
      */
     @Override
     public Action chooseAction(List<Class<? extends Action>> list) {
+        long start = this.metrics.start();
+        long turnStart = System.nanoTime();
+        if (this.lastTurnEnd != 0) observeRound(turnStart - this.lastTurnEnd);
+
+        Action action = decideAction();
+
+        this.lastTurnEnd = System.nanoTime();
+        this.metrics.stop(AgentMetrics.Timer.CHOOSE_ACTION, start);
+        if (this.turn == 1) this.metrics.stop(AgentMetrics.Timer.TIME_TO_FIRST_OFFER, this.initStart);
+        return action;
+    }
+
+    /**
+     * Add the time the opponents took since our last turn to the average
+     * @param nanos time between the end of our last turn and the start of this one
+     */
+    private void observeRound(long nanos) {
+        if (this.opponentsRoundNanos == 0) this.opponentsRoundNanos = nanos;
+        else this.opponentsRoundNanos += ROUND_SMOOTHING * (nanos - this.opponentsRoundNanos);
+    }
+
+    /**
+     * Time we may take to create a bid: a share of the time the opponents take per round, so we take
+     * about as long as they do, and on a time based deadline a share of the real time left
+     * @return budget in nanoseconds
+     */
+    private long getTurnBudgetNanos() {
+        double budget = TURN_BUDGET_SHARE * this.opponentsRoundNanos;
+        TimeLineInfo timeLine = getTimeLine();
+        if (timeLine.getType() == Timeline.Type.Time) {
+            double remainingNanos = (1 - timeLine.getTime()) * timeLine.getTotalTime() * 1e9;
+            budget = Math.min(budget, TURN_BUDGET_SHARE * remainingNanos);
+        }
+        return Math.max(MIN_TURN_BUDGET_NANOS, Math.min(MAX_TURN_BUDGET_NANOS, (long) budget));
+    }
+
+    /**
+     * Offer the max utility bid at first, then offer a created bid or accept the latest offer
+     * @return chosen action.
+     */
+    private Action decideAction() {
         this.turn ++;
-        System.out.println("round: " + turn);
+        this.metrics.count(AgentMetrics.Counter.TURNS, 1);
+        if (this.logger.isEnabled(SessionLogger.Level.DEBUG)) {
+            this.logger.log(SessionLogger.Level.DEBUG, getPartyId(), "round: " + turn);
+        }
 
 
-        //double H = this.opponentMap.get(0).hardHeaded(10);
+        //double H = this.opponents.getModel(0).hardHeaded(10);
         //System.out.println("Opponent H value is :" + H);
 
         // for first 20% of time, offer max utility bid , try for 10-20-30
+        // the structures are still being built until they are needed after that
         if (isMaxUtilityOfferTime()) {
-            Bid maxUtilityBid = null;
-            try {
-                maxUtilityBid = this.utilitySpace.getMaxUtilityBid();
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.out.println("Exception: cannot generate max utility bid");
-            }
-            return new Offer(getPartyId(), maxUtilityBid);
+            return new Offer(getPartyId(), getMaxBid());
         }
+        awaitInitialisation();
 
-        System.out.println("Last received bid had a utility of " + getUtility(this.lastReceivedBid) + " for me." );
+        if (this.logger.isEnabled(SessionLogger.Level.DEBUG)) {
+            this.logger.log(SessionLogger.Level.DEBUG, getPartyId(),
+                    "Last received bid had a utility of " + getUtility(this.lastReceivedBid) + " for me.");
+        }
 
         // Generate an acceptable bid
         Bid ourBid = createBid();
@@ -152,85 +435,122 @@ public class Agent30 extends AbstractNegotiationParty {
      * create new bid based on our utility and estimated opponent utility from frequency model
      * @return generated bid
      */
-    private Bid createBid() {
-        double nashProduct;
-        Bid randomBid;
-
+    Bid createBid() {
+        awaitInitialisation();
+        long start = this.metrics.start();
+        this.turnBudget = getTurnBudgetNanos();
+        long deadline = System.nanoTime() + this.turnBudget;
+        this.candidatesEvaluated = 0;
+        this.metrics.record(AgentMetrics.Timer.TURN_BUDGET, this.turnBudget);
         double acceptableUtility = this.getMinAcceptableUtility();
-        Bid bestBid = generateAcceptableRandomBid(acceptableUtility);
+        Bid bestBid = null;
         double bestNashProduct = -1;
 
 
-        // Every 10 rounds, update nash product of best saved bid from opponent
-        // to increase accuracy of opponent Model by taking into account new offered bid
-        if (this.turn % 10 == 0){
-            this.updateNashProductUtility();
+        // Update nash product of best saved bids with the new offered bids,
+        // only the opponent utilities of models that changed are computed again
+        this.updateNashProductUtility();
+
+        // Search the bid with the best nash product above the acceptable utility,
+        // unless it was already searched in the background or the domain is too large for it
+        SpeculativeSearch.Result speculation = this.speculativeSearch == null ? null
+                : this.speculativeSearch.take(acceptableUtility, this.opponents.getModels());
+        List<BidDetails> searchedBids;
+        boolean exactSearch;
+        if (this.nashBidSearch == null) {
+            searchedBids = new ArrayList<>();
+            exactSearch = false;
+        } else if (speculation != null) {
+            searchedBids = speculation.getBids();
+            exactSearch = speculation.isExact();
+        } else {
+            searchedBids = this.nashBidSearch.search(acceptableUtility, this.opponents.getModels(), 1,
+                    this.turnBudget);
+            exactSearch = this.nashBidSearch.isExact();
+            this.candidatesEvaluated += this.nashBidSearch.getBidsEvaluated();
+            this.metrics.count(AgentMetrics.Counter.SEARCHES, 1);
+            this.metrics.count(AgentMetrics.Counter.SEARCH_BIDS_EVALUATED, this.nashBidSearch.getBidsEvaluated());
+            if (!exactSearch) this.metrics.count(AgentMetrics.Counter.INEXACT_SEARCHES, 1);
+            if (this.nashBidSearch.isParallel()) this.metrics.count(AgentMetrics.Counter.PARALLEL_SEARCHES, 1);
         }
-
-        // Generate random (valid) bids and see which one has a better average utility for opponent
-        // reduce by 5 number of generated bids every 10 rounds
-        // only after 100 rounds when bestBids list is full
-        // hold when value gets down to 10.
-//        if (numberBidsToGenerate > 10 && this.turn > 100){
-//            if (this.turn % 100 == 0) {
-//                numberBidsToGenerate = numberBidsToGenerate - 5;
-//            }
-//        }
-
-        // create numberBidsToGenerate and keep best one with best nash product
-        for (int i = 0; i < maxAmountSavedBids; i++) {
-            // Generate a random bid with utility above minUtility
-            randomBid = generateAcceptableRandomBid(acceptableUtility);
-
-            nashProduct = this.getNashProduct(randomBid);
-            // Only save best bid (highest nash product utility)
-            if (nashProduct > bestNashProduct) {
-                bestBid = randomBid;
-                bestNashProduct = nashProduct;
-            }
+        if (!searchedBids.isEmpty()) {
+            bestBid = searchedBids.get(0).getBid();
+            bestNashProduct = searchedBids.get(0).getMyUndiscountedUtil();
         }
 
-        // if BestBids list not full, add element
-        if (this.bestGeneratedBids.size() < maxAmountSavedBids){
-            this.bestGeneratedBids.add(new BidDetails(bestBid, bestNashProduct));
+        // The whole space was searched and no bid is acceptable, offer our max utility bid
+        else if (exactSearch) {
+            bestBid = getMaxBid();
+            bestNashProduct = this.getNashProduct(bestBid);
+        }
 
-            // if list is full, sort in order of utility
-            // only ran once when last added bid makes the list full
-            if (this.bestGeneratedBids.size() == this.maxAmountSavedBids){
-                this.sortBestBidsByUtility();
+        // The search ran out of time, search on from the opponents' recent offers and our best bids
+        if (!exactSearch) {
+            this.nashProductEvaluator.update(this.opponents.getModels());
+            BidDetails heuristicBid = this.bidSearchHeuristic.search(getHeuristicSeeds(searchedBids),
+                    acceptableUtility, deadline, MIN_HEURISTIC_EVALUATIONS);
+            this.candidatesEvaluated += this.bidSearchHeuristic.getLastEvaluations();
+            if (heuristicBid != null && heuristicBid.getMyUndiscountedUtil() > bestNashProduct) {
+                bestBid = heuristicBid.getBid();
+                bestNashProduct = heuristicBid.getMyUndiscountedUtil();
             }
         }
 
-        // if bestBids list is full
-        else {
-            // Get bid with worst utility
-            double worstBidsUtility = this.bestGeneratedBids.get(this.maxAmountSavedBids -1).getMyUndiscountedUtil();
+        // The heuristic found no acceptable bid in a domain too large for utility bands, offer our max utility bid
+        if (bestBid == null && this.utilityBands == null) {
+            bestBid = getMaxBid();
+            bestNashProduct = this.getNashProduct(bestBid);
+        }
 
-            // between new bestBid and worst bid in list, only keep best bid out of the 2
-            if (bestNashProduct > worstBidsUtility){
-                this.bestGeneratedBids.remove(0);
-                this.bestGeneratedBids.add(new BidDetails(bestBid, bestNashProduct));
-                this.sortBestBidsByUtility();
+        // No bid found in time at all, fall back on random bids
+        if (bestBid == null) {
+            // Generate random (valid) bids and keep the one with the best nash product
+            // until the budget is used up, scoring a block of bids at a time
+            int totalIssues = this.domainIndex.getTotalIssues();
+            Bid[] randomBids = new Bid[RANDOM_BLOCK_SIZE];
+            int[] encodedBids = new int[RANDOM_BLOCK_SIZE * totalIssues];
+            double[] utilities = new double[RANDOM_BLOCK_SIZE];
+            double[] nashProducts = new double[RANDOM_BLOCK_SIZE];
+            int sampled = 0;
+            while (sampled < MIN_RANDOM_BIDS || System.nanoTime() - deadline < 0) {
+                for (int i = 0; i < RANDOM_BLOCK_SIZE; i++) {
+                    // Generate a random bid with utility above minUtility
+                    randomBids[i] = generateAcceptableRandomBid(acceptableUtility);
+                    this.domainIndex.encode(randomBids[i], this.encodedBid);
+                    System.arraycopy(this.encodedBid, 0, encodedBids, i * totalIssues, totalIssues);
+                    utilities[i] = getUtility(randomBids[i]);
+                }
+                sampled += RANDOM_BLOCK_SIZE;
+
+                // Only save best bid (highest nash product utility)
+                int best = this.nashProductEvaluator.scoreBlock(encodedBids, utilities, RANDOM_BLOCK_SIZE,
+                        bestNashProduct, nashProducts);
+                if (best >= 0) {
+                    bestBid = randomBids[best];
+                    bestNashProduct = nashProducts[best];
+                }
             }
-
-            // once list is full (after 100 rounds)
-            // reduce size of bestBids list by 5 every 50 turns and maintain at min of 10
-            // by removing worst 5 bids
-//            if (this.bestGeneratedBids.size() > numberBidsToGenerate && this.turn % 50 == 0){
-//                int w;
-//                for (w = 0; w <= 5; w++) {
-//                    this.bestGeneratedBids.remove(0);
-//                }
-//            }
+            this.candidatesEvaluated += sampled;
+            this.metrics.count(AgentMetrics.Counter.RANDOM_BIDS_SAMPLED, sampled);
+        }
+        this.achievedNashProduct = bestNashProduct;
+        if (this.logger.isEnabled(SessionLogger.Level.DEBUG)) {
+            this.logger.log(SessionLogger.Level.DEBUG, getPartyId(), "budget " + this.turnBudget / 1000 + "us, "
+                    + this.candidatesEvaluated + " bids evaluated, nash product " + bestNashProduct
+                    + ", " + this.bidSearchHeuristic.getName() + " evaluations per improvement "
+                    + this.bidSearchHeuristic.getEvaluationsPerImprovement());
         }
 
+        // Save bid, if list is full only kept if better than the worst saved bid
+        this.bestGeneratedBids.add(bestBid, bestNashProduct);
+
         // when list is full, offer 1 of top 5 bids
-        if (this.bestGeneratedBids.size() >= this.maxAmountSavedBids) {
-            // Get index of 1 of top 5 saved bids
-            // sort list with opponent utility as key
-            int index = this.maxAmountSavedBids - random.nextInt(5) - 1;
-            bestBid = this.bestGeneratedBids.get(index).getBid();
+        if (this.bestGeneratedBids.isFull()) {
+            List<BidDetails> topBids = this.bestGeneratedBids.getBestBids(5);
+            this.metrics.count(AgentMetrics.Counter.SORTS, 1);
+            bestBid = topBids.get(random.nextInt(topBids.size())).getBid();
         }
+        this.metrics.stop(AgentMetrics.Timer.CREATE_BID, start);
         return bestBid;
     }
 
@@ -259,8 +579,8 @@ public class Agent30 extends AbstractNegotiationParty {
         Double current = 0.0;
 
         // check how hardHeaded opponent is based on last 10 rounds
-        for (AgentID id : this.opponentMap.keySet()){
-            current = this.opponentMap.get(id).hardHeaded(10);
+        for (OpponentModel opponent : this.opponents.getModels()){
+            current = opponent.hardHeaded(OpponentModel.RECENT_ROUNDS);
             if (current != null && current > hardHeadedness){
                 hardHeadedness = current;
             }
@@ -285,56 +605,60 @@ public class Agent30 extends AbstractNegotiationParty {
      * create random bid with utility > reservation value
      * by searching acceptable utility space
      * @param minAcceptableUtility self explanitory
-     * @return rand bid with U > reserve value
+     * @return rand bid with U > reserve value, or max utility bid if no bid is above it
      */
     private Bid generateAcceptableRandomBid(double minAcceptableUtility) {
-        Bid bid;
-        do {
-            // create random double between 0-1
-            double randomDouble = this.random.nextDouble();
-
-            // Make randomDouble in range
-            double utilityRange = minAcceptableUtility + randomDouble * (1.0 - minAcceptableUtility);
-
-            // Get a bid closest to the given utility from SOS
-            bid = SOS.getBidNearUtility(utilityRange).getBid();
-        } while (getUtility(bid) <= minAcceptableUtility);
-        return bid;
+        // Get a random bid from the utility band of a random utility in range
+        return this.utilityBands.getRandomBid(minAcceptableUtility, this.random).getBid();
     }
 
     /**
-     * update nash products of bestGeneratedBids.
+     * Bids the heuristic search starts from: the bids the search found, our best saved bids
+     * and the recent offers of the opponents
+     * @param searchedBids bids found by the search
+     * @return encoded seeds, best first
      */
-    private void updateNashProductUtility()
-    {
-        for (BidDetails bid: this.bestGeneratedBids){
-            bid.setMyUndiscountedUtil(this.getNashProduct(bid.getBid()));
+    private List<int[]> getHeuristicSeeds(List<BidDetails> searchedBids) {
+        List<int[]> seeds = new ArrayList<>();
+        for (BidDetails bid : searchedBids) {
+            seeds.add(this.domainIndex.encode(bid.getBid()));
         }
-    }
-
-    // calculate nash product of bids using utility of bid * opponent utility
-    private double getNashProduct(Bid bid)
-    {
-        double nashProduct = this.getUtility(bid);
-        for (AgentID agent : this.opponentMap.keySet()) {
-            nashProduct = nashProduct * this.opponentMap.get(agent).getOpponentUtility(bid);
+        if (!this.bestGeneratedBids.isEmpty()) {
+            for (BidDetails bid : this.bestGeneratedBids.getBestBids(HEURISTIC_SAVED_BIDS)) {
+                seeds.add(this.domainIndex.encode(bid.getBid()));
+            }
+        }
+        for (OpponentModel opponent : this.opponents.getModels()) {
+            int offers = Math.min(HEURISTIC_RECENT_OFFERS, opponent.getRecentBidsSize());
+            for (int age = 0; age < offers; age++) {
+                int[] seed = new int[this.domainIndex.getTotalIssues()];
+                opponent.getRecentBid(age, seed);
+                seeds.add(seed);
+            }
         }
-        return nashProduct;
+        return seeds;
     }
 
     /**
-     * Sort bestGeneratedBids by utilities
+     * update nash products of bestGeneratedBids, and forget the cached utilities of bids no longer saved.
      */
-    private void sortBestBidsByUtility(){
-        Collections.sort(this.bestGeneratedBids, new Comparator<>() {
-
-            @Override
-            public int compare(BidDetails bid1, BidDetails bid2) {
-                if (bid1.getMyUndiscountedUtil() < bid2.getMyUndiscountedUtil()) return -1;
-                else if (bid1.getMyUndiscountedUtil() == bid2.getMyUndiscountedUtil()) return 0;
-                else return 1;
-            }
-        });
+    private void updateNashProductUtility()
+    {
+        long start = this.metrics.start();
+        this.nashProductEvaluator.update(this.opponents.getModels());
+        this.bestGeneratedBids.rescore(bid -> this.opponentUtilityCache.getNashProduct(bid, this::getUtility));
+        this.opponentUtilityCache.evictUnused();
+        this.metrics.count(AgentMetrics.Counter.RESCORES, 1);
+        this.metrics.stop(AgentMetrics.Timer.RESCORE, start);
+    }
+
+    // calculate nash product of bids using utility of bid * opponent utility
+    double getNashProduct(Bid bid)
+    {
+        awaitInitialisation();
+        this.domainIndex.encode(bid, this.encodedBid);
+        this.nashProductEvaluator.update(this.opponents.getModels());
+        return this.nashProductEvaluator.getNashProduct(this.getUtility(bid), this.encodedBid);
     }
 
     /**
@@ -343,6 +667,7 @@ public class Agent30 extends AbstractNegotiationParty {
      * @return boolean accept YES or NO?
      */
     private boolean isAcceptable(Bid proposedBid) {
+        long start = this.metrics.start();
         // compare utility of our bid with utility of offered bid
         boolean decision = getUtility(this.lastReceivedBid) >= getUtility(proposedBid);
 
@@ -351,7 +676,9 @@ public class Agent30 extends AbstractNegotiationParty {
 
         // accept if utility of offered bid > utility of our bid
         // accept if utility of offered bid > minUtility
-        return (decision || getUtility(this.lastReceivedBid) > minUtility);
+        boolean accept = decision || getUtility(this.lastReceivedBid) > minUtility;
+        this.metrics.stop(AgentMetrics.Timer.IS_ACCEPTABLE, start);
+        return accept;
     }
 
     /**
@@ -361,6 +688,7 @@ public class Agent30 extends AbstractNegotiationParty {
      */
     @Override
     public void receiveMessage(AgentID sender, Action action) {
+        long start = this.metrics.start();
         super.receiveMessage(sender, action);
 
         // If sender is making an offer
@@ -371,21 +699,72 @@ public class Agent30 extends AbstractNegotiationParty {
             // Store our utility of latest received bid
             this.lastReceivedBidUtility = getUtility(lastReceivedBid);
 
-            // Store the bid and utility in the opponent's history
-            if (opponentMap.containsKey(sender)) {
-                opponentMap.get(sender).addBid(this.lastReceivedBid);
-                opponentMap.get(sender).adduHistorical(this.lastReceivedBidUtility);
+            // Without the domain index the opponent models are updated once it is built
+            if (!isInitialised()) {
+                this.pendingSenders.add(sender);
+                this.pendingBids.add(this.lastReceivedBid);
+                this.pendingTimes.add(getTimeLine().getTime());
+                this.metrics.stop(AgentMetrics.Timer.RECEIVE_MESSAGE, start);
+                return;
+            }
+            updateOpponentModel(sender, this.lastReceivedBid, this.lastReceivedBidUtility, getTimeLine().getTime());
 
-            } else {
-                // If new opponent, create new entry in opponentMap
-                try {
-                    OpponentModel newOpponent = new OpponentModel(generateRandomBid());
-                    newOpponent.addBid(this.lastReceivedBid);
-                    opponentMap.put(sender, newOpponent);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+            // search our next bid while the other opponents take their turns
+            if (this.speculativeSearch != null && !isMaxUtilityOfferTime()) {
+                this.speculativeSearch.start(getMinAcceptableUtility(), this.opponents.getModels(), 1);
             }
         }
+        this.metrics.stop(AgentMetrics.Timer.RECEIVE_MESSAGE, start);
+    }
+
+    /**
+     * Store the bid and utility in the opponent's history
+     * @param sender ID of opponent
+     * @param bid bid offered by the opponent
+     * @param utility our utility of the bid
+     * @param time time the bid came in
+     */
+    private void updateOpponentModel(AgentID sender, Bid bid, double utility, double time) {
+        long updateStart = this.metrics.start();
+        int index = this.opponents.getIndex(sender);
+        if (index >= 0) {
+            this.opponents.getModel(index).addBid(bid, utility, time);
+        } else {
+            // If new opponent, register it with the next index
+            OpponentModel newOpponent = new OpponentModel(this.domainIndex);
+            newOpponent.addBid(bid, utility, time);
+            this.opponents.add(sender, newOpponent);
+        }
+        this.metrics.stop(AgentMetrics.Timer.OPPONENT_UPDATE, updateStart);
+    }
+
+    /**
+     * Called when the negotiation ended, writes the metrics of this session
+     * @param acceptedBid agreed bid, null if there is none
+     * @return nothing to report to the protocol
+     */
+    @Override
+    public Map<String, String> negotiationEnded(Bid acceptedBid) {
+        awaitInitialisation();
+        if (this.utilityBands != null) {
+            this.metrics.count(AgentMetrics.Counter.EMPTY_BAND_FALLBACKS, this.utilityBands.getEmptyBandFallbacks());
+            this.metrics.count(AgentMetrics.Counter.NO_ACCEPTABLE_BID_FALLBACKS,
+                    this.utilityBands.getNoAcceptableBidFallbacks());
+        }
+        for (OpponentModel opponent : this.opponents.getModels()) {
+            this.metrics.count(AgentMetrics.Counter.MODEL_RECOMPUTES, opponent.getRecomputes());
+        }
+        this.metrics.count(AgentMetrics.Counter.HEURISTIC_EVALUATIONS, this.bidSearchHeuristic.getEvaluations());
+        this.metrics.count(AgentMetrics.Counter.HEURISTIC_IMPROVEMENTS, this.bidSearchHeuristic.getImprovements());
+        this.metrics.count(AgentMetrics.Counter.CACHED_OPPONENT_UTILITIES, this.opponentUtilityCache.getHits());
+        this.metrics.count(AgentMetrics.Counter.REFRESHED_OPPONENT_UTILITIES,
+                this.opponentUtilityCache.getRefreshes());
+        if (this.speculativeSearch != null) {
+            this.metrics.count(AgentMetrics.Counter.SPECULATION_HITS, this.speculativeSearch.getHits());
+            this.metrics.count(AgentMetrics.Counter.SPECULATION_NOT_READY, this.speculativeSearch.getNotReady());
+            this.metrics.count(AgentMetrics.Counter.SPECULATION_STALE, this.speculativeSearch.getStale());
+        }
+        this.metrics.endSession(getPartyId() + "-" + System.currentTimeMillis());
+        return super.negotiationEnded(acceptedBid);
     }
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+package group30;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Latencies and counts of the work the agent does each turn, to see how much of the deadline it uses.
+ * Enabled by setting the group30.metrics system property to the directory the metrics are written to;
+ * when disabled start() and stop() don't read the clock. Every session writes its own metrics when it ends
+ * and adds them to the metrics of the tournament, which are shared by all agents in the JVM.
+ */
+public class AgentMetrics {
+
+    public enum Timer {
+        CHOOSE_ACTION, RECEIVE_MESSAGE, CREATE_BID, IS_ACCEPTABLE, OPPONENT_UPDATE, INITIALISATION, TIME_TO_FIRST_OFFER,
+        TURN_BUDGET, RESCORE
+    }
+
+    public enum Counter {
+        TURNS, SEARCHES, SEARCH_BIDS_EVALUATED, INEXACT_SEARCHES, PARALLEL_SEARCHES, RANDOM_BIDS_SAMPLED, RESCORES,
+        SORTS, EMPTY_BAND_FALLBACKS, NO_ACCEPTABLE_BID_FALLBACKS, MODEL_RECOMPUTES,
+        SPECULATION_HITS, SPECULATION_NOT_READY, SPECULATION_STALE,
+        HEURISTIC_EVALUATIONS, HEURISTIC_IMPROVEMENTS, CACHED_OPPONENT_UTILITIES, REFRESHED_OPPONENT_UTILITIES
+    }
+
+    // Directory the metrics are written to, null if metrics are disabled
+    private static String DIRECTORY = System.getProperty("group30.metrics");
+
+    private static boolean ENABLED = DIRECTORY != null;
+
+    // Metrics of all sessions since the last time they were taken
+    private static AgentMetrics tournamentMetrics = new AgentMetrics();
+
+    // Histogram of each timer and value of each counter
+    private LatencyHistogram[] histograms;
+    private long[] counters;
+
+    // n# of sessions added together
+    private int sessions;
+
+
+    /*FIELD GETTERS */
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public LatencyHistogram getHistogram(Timer timer) {
+        return this.histograms[timer.ordinal()];
+    }
+
+    public long getCounter(Counter counter) {
+        return this.counters[counter.ordinal()];
+    }
+
+    /**
+     * Constructor function
+     */
+    public AgentMetrics() {
+        this.histograms = new LatencyHistogram[Timer.values().length];
+        for (int i = 0; i < this.histograms.length; i++) {
+            this.histograms[i] = new LatencyHistogram();
+        }
+        this.counters = new long[Counter.values().length];
+    }
+
+    /**
+     * @return start time to pass to stop(), 0 when disabled
+     */
+    public long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time since start
+     * @param timer what was timed
+     * @param start value returned by start()
+     */
+    public void stop(Timer timer, long start) {
+        if (ENABLED) this.histograms[timer.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /**
+     * Record a duration that wasn't timed with start(), like a time budget
+     * @param timer what the duration is of
+     * @param nanos duration in nanoseconds
+     */
+    public void record(Timer timer, long nanos) {
+        if (ENABLED) this.histograms[timer.ordinal()].record(nanos);
+    }
+
+    /**
+     * Add an amount to a counter
+     */
+    public void count(Counter counter, long amount) {
+        if (ENABLED) this.counters[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Add the metrics of another session
+     */
+    public void add(AgentMetrics other) {
+        for (int i = 0; i < this.histograms.length; i++) {
+            this.histograms[i].add(other.histograms[i]);
+        }
+        for (int i = 0; i < this.counters.length; i++) {
+            this.counters[i] += other.counters[i];
+        }
+        this.sessions += Math.max(1, other.sessions);
+    }
+
+    /**
+     * Write the metrics of a session that ended and add them to the tournament metrics
+     * @param name name of the session's metrics file
+     */
+    public void endSession(String name) {
+        if (!ENABLED) return;
+        write(DIRECTORY + File.separator + name + ".metrics.txt");
+        synchronized (tournamentMetrics) {
+            tournamentMetrics.add(this);
+        }
+    }
+
+    /**
+     * @return metrics of all sessions that ended since the last call, which start over
+     */
+    public static AgentMetrics takeTournamentMetrics() {
+        synchronized (tournamentMetrics) {
+            AgentMetrics metrics = tournamentMetrics;
+            tournamentMetrics = new AgentMetrics();
+            return metrics;
+        }
+    }
+
+    /**
+     * Write the metrics to a file
+     */
+    public void write(String file) {
+        new File(file).getAbsoluteFile().getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.print(toString());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return table of the latency percentiles in microseconds and the counters
+     */
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder();
+        if (this.sessions > 0) table.append("sessions: ").append(this.sessions).append('\n');
+        table.append(String.format(Locale.ROOT, "%-20s %10s %10s %10s %10s %10s %10s %10s%n",
+                "timer", "count", "mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+        for (Timer timer : Timer.values()) {
+            LatencyHistogram histogram = getHistogram(timer);
+            table.append(String.format(Locale.ROOT, "%-20s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    timer, histogram.getTotalCount(), histogram.getMean() / 1e3,
+                    histogram.getPercentile(0.50) / 1e3, histogram.getPercentile(0.90) / 1e3,
+                    histogram.getPercentile(0.99) / 1e3, histogram.getPercentile(0.999) / 1e3,
+                    histogram.getMax() / 1e3));
+        }
+        for (Counter counter : Counter.values()) {
+            table.append(String.format(Locale.ROOT, "%-28s %12d%n", counter, getCounter(counter)));
+        }
+        return table.toString();
+    }
+}
@@ -0,0 +1,109 @@
+package group30;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Simulated annealing over bids: each step changes the value of a random issue, sometimes of two,
+ * and moves to the new bid if it is better or, with a chance that shrinks as the search cools down,
+ * if it is worse. The temperature is relative to the best nash product found and cools to 0 when the
+ * search runs out of time. The bid it ends at is the first bid it starts from next turn.
+ */
+public class AnnealingSearch extends BidSearchHeuristic {
+
+    public static final String NAME = "annealing";
+
+    // Temperature at the start of a search, relative to the best score
+    private static double INITIAL_TEMPERATURE = 0.1;
+
+    // Chance a step changes a second issue
+    private static double DOUBLE_STEP_CHANCE = 0.2;
+
+    // n# of steps between two updates of the temperature, a power of 2
+    private static int COOLING_INTERVAL = 64;
+
+    // Bid the search is at and its score, kept between searches
+    private int[] current;
+    private double currentScore;
+    private boolean hasCurrent;
+
+    // Bid being tried
+    private int[] candidate;
+
+
+    /*FIELD GETTERS */
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     * @param ownUtilities our utility of each value of each issue, see LazyOutcomeSpace.getOwnUtilities
+     * @param evaluator estimated utilities of the opponents, updated before each search
+     * @param random random source of the steps
+     */
+    public AnnealingSearch(DomainIndex domainIndex, double[][] ownUtilities, NashProductEvaluator evaluator,
+                           Random random) {
+        super(domainIndex, ownUtilities, evaluator, random);
+        this.current = new int[this.totalIssues];
+        this.candidate = new int[this.totalIssues];
+    }
+
+    /**
+     * Start from the best of the seeds and the bid the last search ended at, and anneal until out of time
+     * @param seeds encoded bids to start from, best first
+     */
+    @Override
+    protected void run(List<int[]> seeds) {
+        long start = System.nanoTime();
+
+        // the bid the last search ended at is scored again, the opponent models and min utility changed
+        this.currentScore = this.hasCurrent ? evaluate(this.current) : Double.NEGATIVE_INFINITY;
+        for (int[] seed : seeds) {
+            double score = evaluate(seed);
+            if (score > this.currentScore) {
+                System.arraycopy(seed, 0, this.current, 0, this.totalIssues);
+                this.currentScore = score;
+                this.hasCurrent = true;
+            }
+        }
+        if (!this.hasCurrent) {
+            for (int i = 0; i < this.totalIssues; i++) {
+                this.current[i] = this.random.nextInt(this.ownUtilities[i].length);
+            }
+            this.currentScore = evaluate(this.current);
+            this.hasCurrent = true;
+        }
+
+        double temperature = INITIAL_TEMPERATURE;
+        double scale = Math.max(Math.abs(this.currentScore), Double.MIN_NORMAL);
+        int steps = 0;
+        while (!isOutOfTime()) {
+            if ((steps++ & (COOLING_INTERVAL - 1)) == 0) {
+                temperature = INITIAL_TEMPERATURE * (1 - getProgress(start));
+                scale = Math.max(Math.abs(this.currentScore), Double.MIN_NORMAL);
+            }
+
+            System.arraycopy(this.current, 0, this.candidate, 0, this.totalIssues);
+            int issue = this.random.nextInt(this.totalIssues);
+            this.candidate[issue] = getRandomOtherValue(issue, this.candidate[issue]);
+            if (this.totalIssues > 1 && this.random.nextDouble() < DOUBLE_STEP_CHANCE) {
+                int other = this.random.nextInt(this.totalIssues);
+                this.candidate[other] = getRandomOtherValue(other, this.candidate[other]);
+            }
+
+            double score = evaluate(this.candidate);
+            double difference = (score - this.currentScore) / scale;
+            if (difference >= 0
+                    || temperature > 0 && this.random.nextDouble() < Math.exp(difference / temperature)) {
+                int[] previous = this.current;
+                this.current = this.candidate;
+                this.candidate = previous;
+                this.currentScore = score;
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package group30;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import negotiator.Bid;
+import negotiator.bidding.BidDetails;
+
+/**
+ * Bounded collection of the best bids by a score, for instance their nash product.
+ * Kept as a min heap so the worst bid is found in O(1) and bids are added or evicted in O(log k).
+ * Identical bids are only kept once. The score is stored as the BidDetails utility.
+ */
+public class BestBidsQueue {
+
+    // Max amount of bids to keep
+    private int maxAmountBids;
+
+    // Min heap on score, worst bid at index 0
+    private BidDetails[] heap;
+
+    // n# of bids in the heap
+    private int size;
+
+    // Index in the heap of each bid, to find identical bids
+    private HashMap<Bid, Integer> positions;
+
+
+    /*FIELD GETTERS */
+
+    public int getMaxAmountBids() {
+        return this.maxAmountBids;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isFull() {
+        return this.size == this.maxAmountBids;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Constructor function
+     * @param maxAmountBids max amount of bids to keep
+     */
+    public BestBidsQueue(int maxAmountBids) {
+        this.maxAmountBids = maxAmountBids;
+        this.heap = new BidDetails[maxAmountBids];
+        this.positions = new HashMap<>();
+    }
+
+    /**
+     * @return true if the bid is kept
+     */
+    public boolean contains(Bid bid) {
+        return this.positions.containsKey(bid);
+    }
+
+    /**
+     * Add a bid if it is better than the worst one kept, evicting the worst one when full.
+     * A bid that is already kept gets its score updated instead.
+     * @param bid bid to add
+     * @param score score of the bid
+     * @return true if the bid is kept
+     */
+    public boolean add(Bid bid, double score) {
+        Integer position = this.positions.get(bid);
+        if (position != null) {
+            this.heap[position].setMyUndiscountedUtil(score);
+            siftDown(siftUp(position));
+            return true;
+        }
+
+        if (isFull()) {
+            // between new bid and worst bid kept, only keep best bid out of the 2
+            if (score <= this.heap[0].getMyUndiscountedUtil()) return false;
+            this.positions.remove(this.heap[0].getBid());
+            place(new BidDetails(bid, score), 0);
+            siftDown(0);
+        } else {
+            place(new BidDetails(bid, score), this.size);
+            siftUp(this.size++);
+        }
+        return true;
+    }
+
+    /**
+     * @return bid with the worst score, null if empty
+     */
+    public BidDetails getWorstBid() {
+        return this.size == 0 ? null : this.heap[0];
+    }
+
+    /**
+     * @param amount max amount of bids
+     * @return the best bids, best first
+     */
+    public List<BidDetails> getBestBids(int amount) {
+        BidDetails[] bids = Arrays.copyOf(this.heap, this.size);
+        Arrays.sort(bids, (bid1, bid2) -> Double.compare(bid2.getMyUndiscountedUtil(), bid1.getMyUndiscountedUtil()));
+
+        List<BidDetails> bestBids = new ArrayList<>(Math.min(amount, this.size));
+        for (int i = 0; i < amount && i < bids.length; i++) {
+            bestBids.add(bids[i]);
+        }
+        return bestBids;
+    }
+
+    /**
+     * Give every bid a new score, e.g. after the opponent models changed, and restore the order in O(k)
+     * @param scorer new score of a bid
+     */
+    public void rescore(ToDoubleFunction<Bid> scorer) {
+        for (int i = 0; i < this.size; i++) {
+            this.heap[i].setMyUndiscountedUtil(scorer.applyAsDouble(this.heap[i].getBid()));
+        }
+        for (int i = this.size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Remove all bids
+     */
+    public void clear() {
+        Arrays.fill(this.heap, 0, this.size, null);
+        this.size = 0;
+        this.positions.clear();
+    }
+
+    /**
+     * Put a bid at an index of the heap
+     */
+    private void place(BidDetails bid, int index) {
+        this.heap[index] = bid;
+        this.positions.put(bid.getBid(), index);
+    }
+
+    /**
+     * Move a bid up while it is worse than its parent
+     * @return new index of the bid
+     */
+    private int siftUp(int index) {
+        BidDetails bid = this.heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (this.heap[parent].getMyUndiscountedUtil() <= bid.getMyUndiscountedUtil()) break;
+            place(this.heap[parent], index);
+            index = parent;
+        }
+        place(bid, index);
+        return index;
+    }
+
+    /**
+     * Move a bid down while it is better than one of its children
+     * @return new index of the bid
+     */
+    private int siftDown(int index) {
+        BidDetails bid = this.heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= this.size) break;
+            if (child + 1 < this.size
+                    && this.heap[child + 1].getMyUndiscountedUtil() < this.heap[child].getMyUndiscountedUtil()) {
+                child++;
+            }
+            if (this.heap[child].getMyUndiscountedUtil() >= bid.getMyUndiscountedUtil()) break;
+            place(this.heap[child], index);
+            index = child;
+        }
+        place(bid, index);
+        return index;
+    }
+}
@@ -0,0 +1,227 @@
+package group30;
+
+import java.util.List;
+import java.util.Random;
+import negotiator.bidding.BidDetails;
+
+/**
+ * Time bounded search for the bid with the best nash product above our min utility, for when the
+ * outcomes can't be searched exactly in time. Bids are searched as value indices; a bid at or below the
+ * min utility scores below every acceptable bid, higher the closer it is, so searches can pass through
+ * unacceptable bids but only acceptable ones are returned.
+ * The neighbourhood search is used unless the group30.heuristic system property names another one
+ * (neighbourhood, annealing or genetic): on every domain size HeuristicBenchmark ran, up to 1e30 outcomes,
+ * neither annealing nor the genetic search beat it at the per turn budget. Implementations keep their state
+ * between turns.
+ */
+public abstract class BidSearchHeuristic {
+
+    // Index of the domain
+    protected DomainIndex domainIndex;
+
+    // total number of issues in the domain
+    protected int totalIssues;
+
+    // Our utility of each value of each issue (issue weight * value evaluation)
+    protected double[][] ownUtilities;
+
+    // Estimated utility of each value for each opponent, kept up to date by the caller
+    protected NashProductEvaluator evaluator;
+
+    // Random source of the search
+    protected Random random;
+
+    // Limits of the search
+    protected double minUtility;
+    private long deadline;
+    private int minEvaluations;
+
+    // Best bid above the min utility found by the search and its nash product
+    private int[] best;
+    private double bestNashProduct;
+
+    // n# of bids scored and n# of times a better acceptable bid was found, by the last search and in total
+    protected int lastEvaluations;
+    private int lastImprovements;
+    private long evaluations;
+    private long improvements;
+
+
+    /*FIELD GETTERS */
+
+    public int getLastEvaluations() {
+        return this.lastEvaluations;
+    }
+
+    public int getLastImprovements() {
+        return this.lastImprovements;
+    }
+
+    public long getEvaluations() {
+        return this.evaluations;
+    }
+
+    public long getImprovements() {
+        return this.improvements;
+    }
+
+    /**
+     * @return n# of bids scored per better bid found, in total
+     */
+    public double getEvaluationsPerImprovement() {
+        return this.improvements == 0 ? this.evaluations : this.evaluations / (double) this.improvements;
+    }
+
+    /**
+     * @return name of the heuristic, as given to create
+     */
+    public abstract String getName();
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     * @param ownUtilities our utility of each value of each issue, see LazyOutcomeSpace.getOwnUtilities
+     * @param evaluator estimated utilities of the opponents, updated before each search
+     * @param random random source of the search
+     */
+    protected BidSearchHeuristic(DomainIndex domainIndex, double[][] ownUtilities, NashProductEvaluator evaluator,
+                                 Random random) {
+        this.domainIndex = domainIndex;
+        this.totalIssues = domainIndex.getTotalIssues();
+        this.ownUtilities = ownUtilities;
+        this.evaluator = evaluator;
+        this.random = random;
+        this.best = new int[this.totalIssues];
+    }
+
+    /**
+     * @return name of the heuristic used when none is named
+     */
+    public static String getDefaultName() {
+        return NeighbourhoodSearch.NAME;
+    }
+
+    /**
+     * @param name name of the heuristic, null for the default
+     * @param domainIndex index of the domain
+     * @param ownUtilities our utility of each value of each issue, see LazyOutcomeSpace.getOwnUtilities
+     * @param evaluator estimated utilities of the opponents, updated before each search
+     * @param random random source of the search
+     * @return new heuristic
+     */
+    public static BidSearchHeuristic create(String name, DomainIndex domainIndex, double[][] ownUtilities,
+                                            NashProductEvaluator evaluator, Random random) {
+        if (name == null) name = getDefaultName();
+        switch (name) {
+            case NeighbourhoodSearch.NAME:
+                return new NeighbourhoodSearch(domainIndex, ownUtilities, evaluator, random);
+            case AnnealingSearch.NAME:
+                return new AnnealingSearch(domainIndex, ownUtilities, evaluator, random);
+            case GeneticSearch.NAME:
+                return new GeneticSearch(domainIndex, ownUtilities, evaluator, random);
+            default:
+                throw new IllegalArgumentException("Unknown bid search heuristic " + name);
+        }
+    }
+
+    /**
+     * Search until the deadline
+     * @param seeds encoded bids likely close to the nash point to start from, best first
+     * @param minUtility our min acceptable utility
+     * @param deadline System.nanoTime() to stop at
+     * @param minEvaluations n# of bids to score before looking at the deadline
+     * @return best bid found with utility > minUtility and its nash product as utility, null if none
+     */
+    public BidDetails search(List<int[]> seeds, double minUtility, long deadline, int minEvaluations) {
+        this.minUtility = minUtility;
+        this.deadline = deadline;
+        this.minEvaluations = minEvaluations;
+        this.bestNashProduct = -1;
+        this.lastEvaluations = 0;
+        this.lastImprovements = 0;
+
+        run(seeds);
+
+        this.evaluations += this.lastEvaluations;
+        this.improvements += this.lastImprovements;
+        if (this.bestNashProduct < 0) return null;
+        return new BidDetails(this.domainIndex.decode(this.best), this.bestNashProduct);
+    }
+
+    /**
+     * Search from the seeds until isOutOfTime(), scoring bids with evaluate or keepBest
+     * @param seeds encoded bids to start from, best first
+     */
+    protected abstract void run(List<int[]> seeds);
+
+    /**
+     * Score a bid from scratch and keep it if it is the best acceptable bid so far
+     * @param encodedBid value index of each issue
+     * @return score of the bid
+     */
+    protected double evaluate(int[] encodedBid) {
+        this.lastEvaluations++;
+        double utility = getOwnUtility(encodedBid);
+        if (utility <= this.minUtility) return score(utility, 0);
+        double nashProduct = this.evaluator.getNashProduct(utility, encodedBid);
+        keepBest(encodedBid, utility, nashProduct);
+        return nashProduct;
+    }
+
+    /**
+     * @return our utility of an encoded bid, summed in issue order
+     */
+    protected double getOwnUtility(int[] encodedBid) {
+        double utility = 0.0;
+        for (int i = 0; i < this.totalIssues; i++) {
+            utility += this.ownUtilities[i][encodedBid[i]];
+        }
+        return utility;
+    }
+
+    /**
+     * Keep a bid if it is acceptable and has the best nash product so far
+     */
+    protected void keepBest(int[] encodedBid, double utility, double nashProduct) {
+        if (utility <= this.minUtility || nashProduct <= this.bestNashProduct) return;
+        System.arraycopy(encodedBid, 0, this.best, 0, this.totalIssues);
+        this.bestNashProduct = nashProduct;
+        this.lastImprovements++;
+    }
+
+    /**
+     * @return nash product of an acceptable bid, otherwise a negative score that is higher closer to
+     * the min utility, so any acceptable bid is better than any unacceptable one
+     */
+    protected double score(double utility, double nashProduct) {
+        return utility > this.minUtility ? nashProduct : utility - this.minUtility - 1;
+    }
+
+    /**
+     * @return share of the search done, 1 once enough bids were scored and the deadline passed
+     * @param start System.nanoTime() the search started at
+     */
+    protected double getProgress(long start) {
+        double evaluationProgress = this.minEvaluations == 0 ? 1 : this.lastEvaluations / (double) this.minEvaluations;
+        long duration = this.deadline - start;
+        double timeProgress = duration <= 0 ? 1 : (System.nanoTime() - start) / (double) duration;
+        return Math.min(1, Math.min(evaluationProgress, timeProgress));
+    }
+
+    /**
+     * @return true if enough bids were scored and the deadline passed
+     */
+    protected boolean isOutOfTime() {
+        return this.lastEvaluations >= this.minEvaluations && System.nanoTime() - this.deadline > 0;
+    }
+
+    /**
+     * @return a random value index of an issue other than the given one, if it has any other
+     */
+    protected int getRandomOtherValue(int issue, int valueIndex) {
+        int values = this.ownUtilities[issue].length;
+        if (values < 2) return valueIndex;
+        int other = this.random.nextInt(values - 1);
+        return other >= valueIndex ? other + 1 : other;
+    }
+}
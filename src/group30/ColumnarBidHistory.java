@@ -0,0 +1,215 @@
+package group30;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import negotiator.BidHistory;
+import negotiator.bidding.BidDetails;
+
+/**
+ * Bids received from an opponent in order, stored by column and run-length encoded: consecutive
+ * identical bids are one run, so an opponent offering the same bid round after round only adds to
+ * the length of a run. Each run has the value index of each issue in an array per issue, its length,
+ * the round it starts at and our utility of the bid. The time each bid was received is kept per bid,
+ * as only the bids repeat. A run costs 4 bytes per issue and 16 for the rest, and a bid 8 bytes for its time,
+ * instead of a BidDetails, Bid and HashMap per round. The columns double when full.
+ * A BidHistory of the bids, the same as one built from every bid received, can still be built for the Genius
+ * APIs that need one.
+ */
+public class ColumnarBidHistory {
+
+    // Capacity of a new history in runs, doubled when full
+    private static int INITIAL_CAPACITY = 16;
+
+    // Index of the domain, to decode bids for a BidHistory
+    private DomainIndex domainIndex;
+
+    // total number of issues in the domain
+    private int totalIssues;
+
+    // Value index of the bid of each run, one column per issue
+    private int[][] values;
+
+    // Round of the first bid of each run and n# of bids in it
+    private int[] runStarts;
+    private int[] runLengths;
+
+    // Our utility of the bid of each run
+    private double[] utilities;
+
+    // Time each bid was received
+    private double[] times;
+
+    // n# of runs and n# of bids stored
+    private int runs;
+    private int size;
+
+
+    /*FIELD GETTERS */
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getRuns() {
+        return this.runs;
+    }
+
+    /**
+     * @param run index of the run, 0 for the first one
+     * @param issue index of the issue
+     * @return value index of the issue in the bid of the run
+     */
+    public int getRunValue(int run, int issue) {
+        return this.values[issue][run];
+    }
+
+    /**
+     * @param run index of the run, 0 for the first one
+     * @return n# of bids in the run
+     */
+    public int getRunLength(int run) {
+        return this.runLengths[run];
+    }
+
+    /**
+     * @param round index of the bid, 0 for the first one
+     * @return our utility of the bid
+     */
+    public double getUtility(int round) {
+        return this.utilities[getRun(round)];
+    }
+
+    /**
+     * @param round index of the bid, 0 for the first one
+     * @return time the bid was received
+     */
+    public double getTime(int round) {
+        return this.times[round];
+    }
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     */
+    public ColumnarBidHistory(DomainIndex domainIndex) {
+        this.domainIndex = domainIndex;
+        this.totalIssues = domainIndex.getTotalIssues();
+        this.values = new int[this.totalIssues][INITIAL_CAPACITY];
+        this.runStarts = new int[INITIAL_CAPACITY];
+        this.runLengths = new int[INITIAL_CAPACITY];
+        this.utilities = new double[INITIAL_CAPACITY];
+        this.times = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add a bid after the ones added before
+     * @param encodedBid value index of each issue
+     * @param utility our utility of the bid
+     * @param time time the bid was received
+     * @return true if the bid is the same as the last one, so it only made the last run longer
+     */
+    public boolean add(int[] encodedBid, double utility, double time) {
+        if (this.size == this.times.length) this.times = Arrays.copyOf(this.times, 2 * this.size);
+        this.times[this.size++] = time;
+        int last = this.runs - 1;
+        if (last >= 0 && isBidOfRun(encodedBid, last)) {
+            this.runLengths[last]++;
+            return true;
+        }
+
+        if (this.runs == this.runLengths.length) grow(2 * this.runs);
+        for (int i = 0; i < this.totalIssues; i++) {
+            this.values[i][this.runs] = encodedBid[i];
+        }
+        this.runStarts[this.runs] = this.size - 1;
+        this.runLengths[this.runs] = 1;
+        this.utilities[this.runs] = utility;
+        this.runs++;
+        return false;
+    }
+
+    /**
+     * Copy a bid
+     * @param round index of the bid, 0 for the first one
+     * @param encodedBid array of totalIssues value indices to write to
+     */
+    public void getEncodedBid(int round, int[] encodedBid) {
+        int run = getRun(round);
+        for (int i = 0; i < this.totalIssues; i++) {
+            encodedBid[i] = this.values[i][run];
+        }
+    }
+
+    /**
+     * Count for each issue how often its value changed between consecutive bids of a window of the history.
+     * Values only change between runs, so only the runs in the window are compared
+     * @param first index of the first bid of the window
+     * @param end index after the last bid of the window
+     * @param changes n# of changes of each issue is written to it
+     */
+    public void countChanges(int first, int end, int[] changes) {
+        Arrays.fill(changes, 0);
+        if (end - first < 2) return;
+        int firstRun = getRun(first);
+        int lastRun = getRun(end - 1);
+        for (int i = 0; i < this.totalIssues; i++) {
+            int[] column = this.values[i];
+            int count = 0;
+            for (int r = firstRun + 1; r <= lastRun; r++) {
+                if (column[r] != column[r - 1]) count++;
+            }
+            changes[i] = count;
+        }
+    }
+
+    /**
+     * @return the bids as a BidHistory with our utility and the time they were received, decoded when called
+     */
+    public BidHistory toBidHistory() {
+        List<BidDetails> bids = new ArrayList<>(this.size);
+        int[] encodedBid = new int[this.totalIssues];
+        for (int run = 0; run < this.runs; run++) {
+            for (int i = 0; i < this.totalIssues; i++) {
+                encodedBid[i] = this.values[i][run];
+            }
+            int start = this.runStarts[run];
+            for (int round = start; round < start + this.runLengths[run]; round++) {
+                bids.add(new BidDetails(this.domainIndex.decode(encodedBid), this.utilities[run], this.times[round]));
+            }
+        }
+        return new BidHistory(bids);
+    }
+
+    /**
+     * @return index of the run a bid is in
+     * @param round index of the bid, 0 for the first one
+     */
+    private int getRun(int round) {
+        // the last run starting at or before the round
+        int run = Arrays.binarySearch(this.runStarts, 0, this.runs, round);
+        return run >= 0 ? run : -run - 2;
+    }
+
+    /**
+     * @return true if the bid is the bid of the run
+     */
+    private boolean isBidOfRun(int[] encodedBid, int run) {
+        for (int i = 0; i < this.totalIssues; i++) {
+            if (this.values[i][run] != encodedBid[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Make room for more runs
+     */
+    private void grow(int capacity) {
+        for (int i = 0; i < this.totalIssues; i++) {
+            this.values[i] = Arrays.copyOf(this.values[i], capacity);
+        }
+        this.runStarts = Arrays.copyOf(this.runStarts, capacity);
+        this.runLengths = Arrays.copyOf(this.runLengths, capacity);
+        this.utilities = Arrays.copyOf(this.utilities, capacity);
+    }
+}
@@ -0,0 +1,282 @@
+package group30;
+
+import java.util.HashMap;
+import java.util.List;
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.issue.Issue;
+import negotiator.issue.IssueDiscrete;
+import negotiator.issue.Value;
+import negotiator.issue.ValueDiscrete;
+
+/**
+ * Compact index of a discrete domain, built once per negotiation.
+ * Every value of every issue gets a small int so a bid can be stored as an int[]
+ * (one value index per issue) and evaluated with plain array lookups.
+ * A bid can also be packed in a single long, as a mixed radix number with a digit per issue.
+ */
+public class DomainIndex {
+
+    // Domain the index was built from, used to turn encoded bids back into bids
+    private Domain domain;
+
+    // Index this one shares its tables with, itself if it built them
+    private DomainIndex original;
+
+    // total number of issues in the domain
+    private int totalIssues;
+
+    // IDs of the issues
+    private int[] issueIds;
+
+    // Discrete values of each issue, by value index
+    private ValueDiscrete[][] values;
+
+    // Value index of each value, one map per issue
+    private HashMap<ValueDiscrete, Integer>[] valueIndices;
+
+    // Domain wide key of each value. Values with the same name in different issues share a key,
+    // which is how the opponent model's frequency analysis has always counted them
+    private int[][] valueKeys;
+
+    // number of distinct value keys in the domain
+    private int totalValueKeys;
+
+    // Value of one digit of each issue in a packed bid, the product of the number of values of the issues before it
+    private long[] radixWeights;
+
+    // false if the domain has too many outcomes to pack a bid in a long
+    private boolean packable = true;
+
+
+    /*FIELD GETTERS */
+
+    public Domain getDomain() {
+        return this.domain;
+    }
+
+    public DomainIndex getOriginal() {
+        return this.original;
+    }
+
+    public int getTotalIssues() {
+        return this.totalIssues;
+    }
+
+    public int[] getIssueIds() {
+        return this.issueIds;
+    }
+
+    public int getTotalValueKeys() {
+        return this.totalValueKeys;
+    }
+
+    public boolean isPackable() {
+        return this.packable;
+    }
+
+    /**
+     * Constructor function
+     * @param domain domain to index, assuming discrete issues
+     */
+    @SuppressWarnings("unchecked")
+    public DomainIndex(Domain domain) {
+        this.domain = domain;
+        this.original = this;
+
+        List<Issue> issues = domain.getIssues();
+        this.totalIssues = issues.size();
+        this.issueIds = new int[getTotalIssues()];
+        this.values = new ValueDiscrete[getTotalIssues()][];
+        this.valueIndices = (HashMap<ValueDiscrete, Integer>[]) new HashMap<?, ?>[getTotalIssues()];
+        this.valueKeys = new int[getTotalIssues()][];
+
+        HashMap<ValueDiscrete, Integer> keys = new HashMap<>();
+
+        for (int i = 0; i < getTotalIssues(); i++) {
+            // Assuming discrete issues
+            IssueDiscrete issue = (IssueDiscrete) issues.get(i);
+            List<ValueDiscrete> issueValues = issue.getValues();
+
+            this.issueIds[i] = issue.getNumber();
+            this.values[i] = issueValues.toArray(new ValueDiscrete[0]);
+            this.valueIndices[i] = new HashMap<>();
+            this.valueKeys[i] = new int[issueValues.size()];
+
+            for (int j = 0; j < issueValues.size(); j++) {
+                ValueDiscrete value = issueValues.get(j);
+                this.valueIndices[i].put(value, j);
+
+                Integer key = keys.get(value);
+                if (key == null) {
+                    key = keys.size();
+                    keys.put(value, key);
+                }
+                this.valueKeys[i][j] = key;
+            }
+        }
+        this.totalValueKeys = keys.size();
+
+        this.radixWeights = new long[getTotalIssues()];
+        long radixWeight = 1;
+        for (int i = 0; i < getTotalIssues(); i++) {
+            this.radixWeights[i] = radixWeight;
+            try {
+                radixWeight = Math.multiplyExact(radixWeight, (long) getNumberOfValues(i));
+            } catch (ArithmeticException e) {
+                this.packable = false;
+            }
+        }
+    }
+
+    /**
+     * Constructor function of an index sharing the tables of another, for an equal domain
+     * @param index index to share the tables of
+     * @param domain domain with the same issues and values, which bids are built on
+     */
+    private DomainIndex(DomainIndex index, Domain domain) {
+        this.domain = domain;
+        this.original = index.original;
+        this.totalIssues = index.totalIssues;
+        this.issueIds = index.issueIds;
+        this.values = index.values;
+        this.valueIndices = index.valueIndices;
+        this.valueKeys = index.valueKeys;
+        this.totalValueKeys = index.totalValueKeys;
+        this.radixWeights = index.radixWeights;
+        this.packable = index.packable;
+    }
+
+    /**
+     * @param domain domain with the same issues and values as this one
+     * @return this index if it is of the domain, otherwise one sharing its tables that builds bids on the domain
+     */
+    public DomainIndex forDomain(Domain domain) {
+        return domain == this.domain ? this : new DomainIndex(this, domain);
+    }
+
+    /**
+     * @return n# of outcomes of the domain, as a double since it may not fit in a long
+     */
+    public double getTotalOutcomes() {
+        double outcomes = 1;
+        for (int i = 0; i < getTotalIssues(); i++) {
+            outcomes *= getNumberOfValues(i);
+        }
+        return outcomes;
+    }
+
+    /**
+     * @param issue index of the issue (not its ID)
+     * @return number of values of the issue
+     */
+    public int getNumberOfValues(int issue) {
+        return this.values[issue].length;
+    }
+
+    /**
+     * @param issue index of the issue (not its ID)
+     * @param valueIndex index of the value
+     * @return the discrete value
+     */
+    public ValueDiscrete getValue(int issue, int valueIndex) {
+        return this.values[issue][valueIndex];
+    }
+
+    /**
+     * @param issue index of the issue (not its ID)
+     * @param value value of the issue
+     * @return index of the value, -1 if the issue has no such value
+     */
+    public int getValueIndex(int issue, Value value) {
+        Integer index = this.valueIndices[issue].get(value);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param issue index of the issue (not its ID)
+     * @param valueIndex index of the value
+     * @return domain wide key of the value
+     */
+    public int getValueKey(int issue, int valueIndex) {
+        return this.valueKeys[issue][valueIndex];
+    }
+
+    /**
+     * Encode a bid as value indices
+     * @param bid bid to encode
+     * @return new array with the value index of each issue
+     */
+    public int[] encode(Bid bid) {
+        return encode(bid, new int[getTotalIssues()]);
+    }
+
+    /**
+     * Encode a bid as value indices into an existing array, so no memory is allocated
+     * @param bid bid to encode
+     * @param encodedBid array of size getTotalIssues() to write to
+     * @return encodedBid
+     */
+    public int[] encode(Bid bid, int[] encodedBid) {
+        for (int i = 0; i < getTotalIssues(); i++) {
+            encodedBid[i] = getValueIndex(i, bid.getValue(this.issueIds[i]));
+        }
+        return encodedBid;
+    }
+
+    /**
+     * Turn an encoded bid back into a bid
+     * @param encodedBid value index of each issue
+     * @return the bid
+     */
+    public Bid decode(int[] encodedBid) {
+        HashMap<Integer, Value> bidValues = new HashMap<>();
+        for (int i = 0; i < getTotalIssues(); i++) {
+            bidValues.put(this.issueIds[i], this.values[i][encodedBid[i]]);
+        }
+        return new Bid(this.domain, bidValues);
+    }
+
+    /**
+     * Pack value indices in a long, see isPackable()
+     * @param encodedBid value index of each issue, or any digits below the number of values of each issue
+     * @return packed bid
+     */
+    public long pack(int[] encodedBid) {
+        long packedBid = 0;
+        for (int i = 0; i < getTotalIssues(); i++) {
+            packedBid += encodedBid[i] * this.radixWeights[i];
+        }
+        return packedBid;
+    }
+
+    /**
+     * Unpack a packed bid into an existing array
+     * @param packedBid packed bid
+     * @param encodedBid array of size getTotalIssues() to write to
+     * @return encodedBid
+     */
+    public int[] unpack(long packedBid, int[] encodedBid) {
+        for (int i = 0; i < getTotalIssues(); i++) {
+            encodedBid[i] = getDigit(packedBid, i);
+        }
+        return encodedBid;
+    }
+
+    /**
+     * @param packedBid packed bid
+     * @param issue index of the issue (not its ID)
+     * @return value index of the issue in the packed bid
+     */
+    public int getDigit(long packedBid, int issue) {
+        return (int) ((packedBid / this.radixWeights[issue]) % getNumberOfValues(issue));
+    }
+
+    /**
+     * @param issue index of the issue (not its ID)
+     * @return amount to add to a packed bid to add 1 to the digit of an issue
+     */
+    public long getRadixWeight(int issue) {
+        return this.radixWeights[issue];
+    }
+}
@@ -0,0 +1,136 @@
+package group30;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Steady state genetic search over bids with a small population kept between turns. Each child takes
+ * the value of every issue from one of two parents picked by tournament, some values mutate, and it
+ * replaces the worst member if it is better and not already in the population.
+ * Every search first scores the population again and lets the seeds replace the worst members.
+ */
+public class GeneticSearch extends BidSearchHeuristic {
+
+    public static final String NAME = "genetic";
+
+    // n# of bids in the population
+    private static int POPULATION_SIZE = 32;
+
+    // n# of members competing to be a parent
+    private static int TOURNAMENT_SIZE = 2;
+
+    // Members of the population, the first populationSize are used, and their scores
+    private int[][] population;
+    private double[] scores;
+    private int populationSize;
+
+    // Bid being bred
+    private int[] child;
+
+
+    /*FIELD GETTERS */
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     * @param ownUtilities our utility of each value of each issue, see LazyOutcomeSpace.getOwnUtilities
+     * @param evaluator estimated utilities of the opponents, updated before each search
+     * @param random random source of the selection, crossover and mutation
+     */
+    public GeneticSearch(DomainIndex domainIndex, double[][] ownUtilities, NashProductEvaluator evaluator,
+                         Random random) {
+        super(domainIndex, ownUtilities, evaluator, random);
+        this.population = new int[POPULATION_SIZE][this.totalIssues];
+        this.scores = new double[POPULATION_SIZE];
+        this.child = new int[this.totalIssues];
+    }
+
+    /**
+     * Score the population again, add the seeds and breed until out of time
+     * @param seeds encoded bids to start from, best first
+     */
+    @Override
+    protected void run(List<int[]> seeds) {
+        // the opponent models and min utility changed since the last search
+        for (int m = 0; m < this.populationSize; m++) {
+            this.scores[m] = evaluate(this.population[m]);
+        }
+        for (int[] seed : seeds) {
+            if (contains(seed)) continue;
+            offer(seed, evaluate(seed));
+        }
+
+        // fill up with random bids the first time
+        while (this.populationSize < POPULATION_SIZE) {
+            for (int i = 0; i < this.totalIssues; i++) {
+                this.child[i] = this.random.nextInt(this.ownUtilities[i].length);
+            }
+            offer(this.child, evaluate(this.child));
+        }
+
+        double mutationChance = 1.0 / this.totalIssues;
+        while (!isOutOfTime()) {
+            int[] mother = this.population[selectParent()];
+            int[] father = this.population[selectParent()];
+            for (int i = 0; i < this.totalIssues; i++) {
+                this.child[i] = this.random.nextBoolean() ? mother[i] : father[i];
+                if (this.random.nextDouble() < mutationChance) {
+                    this.child[i] = getRandomOtherValue(i, this.child[i]);
+                }
+            }
+            // a child like a member changes one more value, so it still explores
+            if (contains(this.child)) {
+                int issue = this.random.nextInt(this.totalIssues);
+                this.child[issue] = getRandomOtherValue(issue, this.child[issue]);
+            }
+            double score = evaluate(this.child);
+            if (!contains(this.child)) offer(this.child, score);
+        }
+    }
+
+    /**
+     * @return index of the best of TOURNAMENT_SIZE random members
+     */
+    private int selectParent() {
+        int parent = this.random.nextInt(this.populationSize);
+        for (int t = 1; t < TOURNAMENT_SIZE; t++) {
+            int other = this.random.nextInt(this.populationSize);
+            if (this.scores[other] > this.scores[parent]) parent = other;
+        }
+        return parent;
+    }
+
+    /**
+     * Add a bid to the population if there is room, otherwise let it replace the worst member if it is better
+     */
+    private void offer(int[] encodedBid, double score) {
+        int slot = this.populationSize;
+        if (slot == POPULATION_SIZE) {
+            slot = 0;
+            for (int m = 1; m < POPULATION_SIZE; m++) {
+                if (this.scores[m] < this.scores[slot]) slot = m;
+            }
+            if (score <= this.scores[slot]) return;
+        } else {
+            this.populationSize++;
+        }
+        System.arraycopy(encodedBid, 0, this.population[slot], 0, this.totalIssues);
+        this.scores[slot] = score;
+    }
+
+    /**
+     * @return true if the bid is a member of the population
+     */
+    private boolean contains(int[] encodedBid) {
+        for (int m = 0; m < this.populationSize; m++) {
+            if (Arrays.equals(this.population[m], encodedBid)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,104 @@
+package group30;
+
+/**
+ * Histogram of latencies in nanoseconds in the style of HdrHistogram: values are counted in buckets
+ * that double in width, each split in 64 sub buckets, so every value is kept to within 1/64 of itself
+ * with a fixed amount of memory and no allocation when recording.
+ */
+public class LatencyHistogram {
+
+    // Values below this get a bucket of their own
+    private static int LINEAR_VALUES = 128;
+
+    // n# of sub buckets of each doubling bucket
+    private static int SUB_BUCKETS = 64;
+
+    // Count of each bucket, enough buckets for any long
+    private long[] counts = new long[LINEAR_VALUES + 57 * SUB_BUCKETS];
+
+    // n# of values recorded, their sum and extremes
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+
+    /*FIELD GETTERS */
+
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    public long getMin() {
+        return this.totalCount == 0 ? 0 : this.min;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        return this.totalCount == 0 ? 0 : this.sum / (double) this.totalCount;
+    }
+
+    /**
+     * Record a value
+     * @param value latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        this.counts[getIndex(value)]++;
+        this.totalCount++;
+        this.sum += value;
+        if (value < this.min) this.min = value;
+        if (value > this.max) this.max = value;
+    }
+
+    /**
+     * Add all values recorded by another histogram
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.totalCount += other.totalCount;
+        this.sum += other.sum;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    /**
+     * @param fraction fraction of the values, e.g. 0.99
+     * @return highest value of the bucket below which the fraction of the values falls, capped at the max
+     */
+    public long getPercentile(double fraction) {
+        if (this.totalCount == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(fraction * this.totalCount));
+        long count = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            count += this.counts[i];
+            if (count >= target) return Math.min(this.max, getHighestValue(i));
+        }
+        return this.max;
+    }
+
+    /**
+     * @return bucket of a value
+     */
+    private static int getIndex(long value) {
+        if (value < LINEAR_VALUES) return (int) value;
+        // shift so the value falls between SUB_BUCKETS and 2 * SUB_BUCKETS
+        int shift = 57 - Long.numberOfLeadingZeros(value);
+        return LINEAR_VALUES + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return highest value counted in a bucket
+     */
+    private static long getHighestValue(int index) {
+        if (index < LINEAR_VALUES) return index;
+        int shift = (index - LINEAR_VALUES) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_VALUES) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,412 @@
+package group30;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import negotiator.bidding.BidDetails;
+import negotiator.utility.AdditiveUtilitySpace;
+import negotiator.utility.EvaluatorDiscrete;
+
+/**
+ * The outcomes of an additive utility space in order of descending utility, generated on demand instead of
+ * enumerating and sorting the whole domain up front like SortedOutcomeSpace.
+ * The values of each issue are ranked by utility, so the best outcome takes the best value of every issue
+ * and each next best outcome is a neighbour of one already generated with one value a rank worse.
+ * Only the outcomes asked for so far and their neighbours are kept in memory, both as packed bids.
+ * Set the group30.offheap system property to keep the generated outcomes outside the heap.
+ * Outcomes are generated under a lock and read without one, so agents in different sessions can share a space.
+ * Each session gets a view of the shared space with its own index of the domain (see forDomain), so the bids
+ * it hands out are built on the session's own Domain.
+ */
+public class LazyOutcomeSpace {
+
+    // Max number of nodes visited when looking for the bid nearest to a utility
+    private static int MAX_NEAR_UTILITY_NODES = 100000;
+
+    // Largest domain in n# of outcomes a space is built for by the agent, larger ones are searched heuristically
+    private static double MAX_DOMAIN_OUTCOMES = 1e9;
+
+    // Keep the generated outcomes in direct buffers outside the heap
+    private static boolean OFF_HEAP = Boolean.getBoolean("group30.offheap");
+
+    // Index of the domain, to encode bids as value indices
+    private DomainIndex domainIndex;
+
+    // total number of issues in the domain
+    private int totalIssues;
+
+    // Our utility of each value of each issue (issue weight * value evaluation)
+    private double[][] ownUtilities;
+
+    // Values of each issue from best to worst utility
+    private int[][] rankedValues;
+
+    // Best and worst utility we can still get from issue i onwards
+    private double[] maxRemainingUtilities;
+    private double[] minRemainingUtilities;
+
+    // Outcomes generated so far, best utility first, shared by the views of the space
+    private PackedOutcomeIndex outcomes;
+
+    // State of the generation of the outcomes, shared by the views of the space and locked while generating
+    private Generation generation;
+
+    // Search state of getBidNearUtility
+    private double targetUtility;
+    private double minUtility;
+    private int[] currentBid;
+    private int[] nearestBid;
+    private double nearestDistance;
+    private int nodes;
+
+
+    /*FIELD GETTERS */
+
+    public DomainIndex getDomainIndex() {
+        return this.domainIndex;
+    }
+
+    public double[][] getOwnUtilities() {
+        return this.ownUtilities;
+    }
+
+    /**
+     * @return n# of outcomes generated so far
+     */
+    public int getExploredOutcomes() {
+        return this.outcomes.size();
+    }
+
+    /**
+     * @return estimate of the memory used by the generated outcomes and the frontier in bytes
+     */
+    public long getMemoryEstimate() {
+        return 16L * this.outcomes.size() + 48L * this.generation.frontierSize;
+    }
+
+    /**
+     * @param growthListener called after generating outcomes when their n# passed a power of 2, null for none.
+     * Shared by the views of the space
+     */
+    public void setGrowthListener(Runnable growthListener) {
+        this.generation.growthListener = growthListener;
+    }
+
+    /**
+     * @param domainIndex index of the domain
+     * @return true if the domain is small enough for the agent to build a space of its outcomes and search it,
+     * which needs a bid to fit in a long
+     */
+    public static boolean isSuitable(DomainIndex domainIndex) {
+        return domainIndex.isPackable() && domainIndex.getTotalOutcomes() <= MAX_DOMAIN_OUTCOMES;
+    }
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     * @param utilitySpace our utility space
+     */
+    public LazyOutcomeSpace(DomainIndex domainIndex, AdditiveUtilitySpace utilitySpace) {
+        this(domainIndex, getOwnUtilities(domainIndex, utilitySpace));
+    }
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     * @param ownUtilities our utility of each value of each issue, see getOwnUtilities
+     */
+    public LazyOutcomeSpace(DomainIndex domainIndex, double[][] ownUtilities) {
+        if (!domainIndex.isPackable()) throw new IllegalArgumentException("Too many outcomes to pack a bid in a long");
+        this.domainIndex = domainIndex;
+        this.totalIssues = domainIndex.getTotalIssues();
+        this.ownUtilities = ownUtilities;
+
+        // rank the values of each issue, best first
+        this.rankedValues = new int[this.totalIssues][];
+        this.maxRemainingUtilities = new double[this.totalIssues + 1];
+        this.minRemainingUtilities = new double[this.totalIssues + 1];
+        for (int i = this.totalIssues - 1; i >= 0; i--) {
+            final double[] utilities = this.ownUtilities[i];
+            Integer[] order = new Integer[utilities.length];
+            for (int j = 0; j < order.length; j++) order[j] = j;
+            Arrays.sort(order, Comparator.comparingDouble((Integer j) -> -utilities[j]));
+            this.rankedValues[i] = new int[order.length];
+            for (int j = 0; j < order.length; j++) this.rankedValues[i][j] = order[j];
+
+            this.maxRemainingUtilities[i] = this.maxRemainingUtilities[i + 1] + utilities[order[0]];
+            this.minRemainingUtilities[i] = this.minRemainingUtilities[i + 1] + utilities[order[order.length - 1]];
+        }
+
+        // ranks are packed like value indices, the best outcome has rank 0 on every issue
+        this.outcomes = new PackedOutcomeIndex(OFF_HEAP);
+        this.generation = new Generation(this.totalIssues);
+        this.generation.frontier.add(new Candidate(0L, getRankedUtility(0L), 0));
+
+        this.currentBid = new int[this.totalIssues];
+        this.nearestBid = new int[this.totalIssues];
+    }
+
+    /**
+     * Constructor function of a view of a space on another index of an equal domain
+     * @param space space to share the outcomes of
+     * @param domainIndex index to build bids with
+     */
+    private LazyOutcomeSpace(LazyOutcomeSpace space, DomainIndex domainIndex) {
+        this.domainIndex = domainIndex;
+        this.totalIssues = space.totalIssues;
+        this.ownUtilities = space.ownUtilities;
+        this.rankedValues = space.rankedValues;
+        this.maxRemainingUtilities = space.maxRemainingUtilities;
+        this.minRemainingUtilities = space.minRemainingUtilities;
+        this.outcomes = space.outcomes;
+        this.generation = space.generation;
+
+        this.currentBid = new int[this.totalIssues];
+        this.nearestBid = new int[this.totalIssues];
+    }
+
+    /**
+     * @param domainIndex index of an equal domain, see DomainIndex.forDomain
+     * @return this space if it uses the index, otherwise a view sharing its outcomes that builds bids with the index
+     */
+    public LazyOutcomeSpace forDomain(DomainIndex domainIndex) {
+        return domainIndex == this.domainIndex ? this : new LazyOutcomeSpace(this, domainIndex);
+    }
+
+    /**
+     * Our utility of each value, so bids can be scored one issue at a time
+     * @param domainIndex index of the domain
+     * @param utilitySpace our utility space
+     * @return issue weight * value evaluation of each value of each issue
+     */
+    public static double[][] getOwnUtilities(DomainIndex domainIndex, AdditiveUtilitySpace utilitySpace) {
+        double[][] ownUtilities = new double[domainIndex.getTotalIssues()][];
+        for (int i = 0; i < ownUtilities.length; i++) {
+            int issueNumber = domainIndex.getIssueIds()[i];
+            EvaluatorDiscrete evaluatorDiscrete = (EvaluatorDiscrete) utilitySpace.getEvaluator(issueNumber);
+            ownUtilities[i] = new double[domainIndex.getNumberOfValues(i)];
+            for (int j = 0; j < ownUtilities[i].length; j++) {
+                try {
+                    ownUtilities[i][j] = utilitySpace.getWeight(issueNumber)
+                            * evaluatorDiscrete.getEvaluation(domainIndex.getValue(i, j));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return ownUtilities;
+    }
+
+    /**
+     * @param utilities our utility of each value of an issue
+     * @return index of the value ranked best: the first one with the highest utility, as the values are ranked
+     * by a stable sort
+     */
+    public static int getBestValue(double[] utilities) {
+        int best = 0;
+        for (int j = 1; j < utilities.length; j++) {
+            if (Double.compare(utilities[j], utilities[best]) > 0) best = j;
+        }
+        return best;
+    }
+
+    /**
+     * @return our utility of an outcome
+     * @param rank position of the outcome from best to worst
+     */
+    public double getUtility(int rank) {
+        if (rank >= this.outcomes.size()) explore(rank + 1);
+        return this.outcomes.getUtility(rank);
+    }
+
+    /**
+     * Copy the value indices of an outcome
+     * @param rank position of the outcome from best to worst
+     * @param encodedBid array the value indices are copied to
+     */
+    public void getEncodedOutcome(int rank, int[] encodedBid) {
+        if (rank >= this.outcomes.size()) explore(rank + 1);
+        this.domainIndex.unpack(this.outcomes.getPackedBid(rank), encodedBid);
+    }
+
+    /**
+     * @return outcome with its utility
+     * @param rank position of the outcome from best to worst
+     */
+    public BidDetails getOutcome(int rank) {
+        int[] encodedBid = new int[this.totalIssues];
+        getEncodedOutcome(rank, encodedBid);
+        return new BidDetails(this.domainIndex.decode(encodedBid), this.outcomes.getUtility(rank));
+    }
+
+    /**
+     * @return the bid with the max utility
+     */
+    public BidDetails getMaxBidPossible() {
+        return getOutcome(0);
+    }
+
+    /**
+     * Count the outcomes with utility > minUtility, generating outcomes until one is below it or limit are counted
+     * @param minUtility min utility
+     * @param limit max count
+     * @return n# of outcomes with utility > minUtility, which are the first ones, at most limit
+     */
+    public int countOutcomesAbove(double minUtility, int limit) {
+        while (true) {
+            int explored = this.outcomes.size();
+            int count = this.outcomes.countAbove(minUtility, explored);
+            if (count < explored || count >= limit || this.generation.exhausted) return Math.min(count, limit);
+            explore(Math.min(limit, Math.max(2 * explored, 64)));
+        }
+    }
+
+    /**
+     * Generate outcomes until there are at least amount, or all of them, and tell the growth listener
+     * if their n# passed a power of 2
+     */
+    private void explore(int amount) {
+        Generation generation = this.generation;
+        boolean grown;
+        synchronized (generation) {
+            int explored = this.outcomes.size();
+            while (this.outcomes.size() < amount && !generation.frontier.isEmpty()) {
+                Candidate candidate = generation.frontier.poll();
+
+                // save the outcome
+                for (int i = 0; i < this.totalIssues; i++) {
+                    generation.generatedBid[i] = this.rankedValues[i][this.domainIndex.getDigit(candidate.ranks, i)];
+                }
+                this.outcomes.add(this.domainIndex.pack(generation.generatedBid), candidate.utility);
+
+                // neighbours one rank worse on one issue. Only issues from the last one made worse onwards,
+                // so every outcome is reached from exactly one other
+                for (int i = candidate.lastIssue; i < this.totalIssues; i++) {
+                    if (this.domainIndex.getDigit(candidate.ranks, i) + 1 == this.rankedValues[i].length) continue;
+                    long ranks = candidate.ranks + this.domainIndex.getRadixWeight(i);
+                    generation.frontier.add(new Candidate(ranks, getRankedUtility(ranks), i));
+                }
+            }
+            generation.frontierSize = generation.frontier.size();
+            if (generation.frontier.isEmpty()) generation.exhausted = true;
+            grown = Integer.highestOneBit(this.outcomes.size()) > Integer.highestOneBit(explored);
+        }
+        // outside the lock, the listener may look at other spaces
+        Runnable growthListener = generation.growthListener;
+        if (grown && growthListener != null) growthListener.run();
+    }
+
+    /**
+     * Find the bid with utility nearest to a target utility, without generating the outcomes in between.
+     * Branch and bound over the issues, a partial bid is skipped when the best and worst utility it can
+     * still reach are both further from the target than the nearest bid found so far
+     * @param utility target utility
+     * @return bid nearest to the target utility, or the nearest found when the search runs out of nodes
+     */
+    public BidDetails getBidNearUtility(double utility) {
+        return getBidNearUtility(utility, -1);
+    }
+
+    /**
+     * Find the bid with utility > minUtility nearest to a target utility, as getBidNearUtility(utility),
+     * skipping partial bids that can't get above minUtility
+     * @param utility target utility
+     * @param minUtility min utility, exclusive
+     * @return bid nearest to the target utility among the ones above minUtility, or the nearest found when the
+     * search runs out of nodes. The max utility bid if none is found, even when it isn't above minUtility
+     */
+    public synchronized BidDetails getBidNearUtility(double utility, double minUtility) {
+        this.targetUtility = utility;
+        this.minUtility = minUtility;
+        this.nodes = 0;
+        // start from the max utility bid, so there always is an answer
+        for (int i = 0; i < this.totalIssues; i++) {
+            this.nearestBid[i] = this.rankedValues[i][0];
+        }
+        this.nearestDistance = Math.abs(this.maxRemainingUtilities[0] - utility);
+
+        searchNearUtility(0, 0.0);
+        double nearestUtility = 0.0;
+        for (int i = 0; i < this.totalIssues; i++) {
+            nearestUtility += this.ownUtilities[i][this.nearestBid[i]];
+        }
+        return new BidDetails(this.domainIndex.decode(this.nearestBid), nearestUtility);
+    }
+
+    /**
+     * Try every value of an issue given the values chosen for the previous issues
+     */
+    private void searchNearUtility(int issue, double partialUtility) {
+        for (int j : this.rankedValues[issue]) {
+            if (this.nearestDistance == 0.0 || this.nodes++ > MAX_NEAR_UTILITY_NODES) return;
+
+            double utility = partialUtility + this.ownUtilities[issue][j];
+            double max = utility + this.maxRemainingUtilities[issue + 1];
+            double min = utility + this.minRemainingUtilities[issue + 1];
+
+            // values are ranked best first, so all further values are too low as well
+            if (max < this.targetUtility - this.nearestDistance || max <= this.minUtility) return;
+            if (min > this.targetUtility + this.nearestDistance) continue;
+
+            this.currentBid[issue] = j;
+            if (issue + 1 < this.totalIssues) {
+                searchNearUtility(issue + 1, utility);
+            } else if (Math.abs(utility - this.targetUtility) < this.nearestDistance && utility > this.minUtility) {
+                this.nearestDistance = Math.abs(utility - this.targetUtility);
+                System.arraycopy(this.currentBid, 0, this.nearestBid, 0, this.totalIssues);
+            }
+        }
+    }
+
+    /**
+     * @return our utility of an outcome given as the packed rank of its value of each issue
+     */
+    private double getRankedUtility(long ranks) {
+        double utility = 0.0;
+        for (int i = 0; i < this.totalIssues; i++) {
+            utility += this.ownUtilities[i][this.rankedValues[i][this.domainIndex.getDigit(ranks, i)]];
+        }
+        return utility;
+    }
+
+    /**
+     * Outcomes next in line to be generated and whether all were, shared by the views of a space
+     */
+    private static class Generation {
+
+        // Outcomes next in line to be generated, best utility first
+        private final PriorityQueue<Candidate> frontier =
+                new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> -c.utility));
+
+        // Size of the frontier after the last exploration, to estimate the memory without the lock
+        private volatile int frontierSize = 1;
+
+        // Value indices of the outcome being generated
+        private final int[] generatedBid;
+
+        // true once every outcome is generated
+        private volatile boolean exhausted;
+
+        // Called when the n# of outcomes passed a power of 2, null for none
+        private volatile Runnable growthListener;
+
+        Generation(int totalIssues) {
+            this.generatedBid = new int[totalIssues];
+        }
+    }
+
+    /**
+     * Outcome waiting to be generated, as the rank of its value of each issue packed in a long
+     */
+    private static class Candidate {
+        private final long ranks;
+        private final double utility;
+        private final int lastIssue;
+
+        Candidate(long ranks, double utility, int lastIssue) {
+            this.ranks = ranks;
+            this.utility = utility;
+            this.lastIssue = lastIssue;
+        }
+    }
+}
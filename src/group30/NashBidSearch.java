@@ -0,0 +1,377 @@
+package group30;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import negotiator.bidding.BidDetails;
+
+/**
+ * Finds the bids with the best nash product above a minimum utility.
+ * If the slice of the outcome space above the minimum utility is small it is searched exhaustively,
+ * otherwise a branch and bound over the issues is used, which works because our utility
+ * and the estimated opponent utilities are all a weighted sum over the issues.
+ * A search is cut short after a number of nodes, or when given a time budget, when the budget runs out;
+ * it then returns the best bids found so far.
+ */
+public class NashBidSearch {
+
+    // Max number of bids above the min utility to search exhaustively
+    private static int MAX_EXHAUSTIVE_BIDS = 20000;
+
+    // Max number of bids above the min utility to search exhaustively when parallel scoring pays off, set with
+    // the group30.parallel.exhaustive system property. Only the nash search uses it, and it stays at
+    // MAX_EXHAUSTIVE_BIDS until the speed-up of parallel scoring has been measured on several cores
+    private static int MAX_PARALLEL_EXHAUSTIVE_BIDS = Math.max(MAX_EXHAUSTIVE_BIDS,
+            Integer.getInteger("group30.parallel.exhaustive", MAX_EXHAUSTIVE_BIDS));
+
+    // Max number of nodes the branch and bound visits before returning the best bids found so far,
+    // when the search has no time budget
+    private static int MAX_SEARCH_NODES = 200000;
+
+    // n# of nodes or outcomes between two looks at the clock, a power of 2
+    private static int CLOCK_CHECK_INTERVAL = 1024;
+
+    // n# of outcomes scored together when searching exhaustively, divides CLOCK_CHECK_INTERVAL
+    private static int BLOCK_SIZE = 64;
+
+    // Index of the domain, to encode bids as value indices
+    private DomainIndex domainIndex;
+
+    // total number of issues in the domain
+    private int totalIssues;
+
+    // Our utility of each value of each issue (issue weight * value evaluation)
+    private double[][] ownUtilities;
+
+    // Outcomes in order of our utility, generated as far as the searches need
+    private LazyOutcomeSpace outcomeSpace;
+
+    // Encoded outcome being scored
+    private int[] encodedOutcome;
+
+    // Nash product of the outcomes with the opponent models of the search
+    private NashProductEvaluator evaluator;
+
+    // Block of outcomes being scored, their utility and nash product
+    private int[] blockOutcomes;
+    private double[] blockUtilities;
+    private double[] blockScores;
+
+    // Best bids found by the last search, best nash product first
+    private int[][] bestEncodedBids;
+    private double[] bestNashProducts;
+    private int bestBidsFound;
+
+    // No bid above the min utility has a higher nash product than this, as of the last search
+    private double upperBound;
+
+    // n# of complete bids scored by the last search
+    private int bidsEvaluated;
+
+    // true if the last search scored the outcomes in parallel
+    private boolean parallel;
+
+    // Branch and bound state
+    private double minUtility;
+    private int parties;
+    private double[][][] partyUtilities;
+    private double[][] maxRemainingUtilities;
+    private double[][] partialUtilities;
+    private int[][] valueOrder;
+    private int[] currentBid;
+    private int nodes;
+    private double abandonedBound;
+
+    // Time the search must return by, if it has a budget, and true once it has to return
+    private boolean timed;
+    private long deadline;
+    private boolean outOfTime;
+
+
+    /*FIELD GETTERS */
+
+    public double getUpperBound() {
+        return this.upperBound;
+    }
+
+    public int getBidsEvaluated() {
+        return this.bidsEvaluated;
+    }
+
+    public boolean isParallel() {
+        return this.parallel;
+    }
+
+    /**
+     * @return true if no bid the last search cut short could have been one of the bids it returned, so they
+     * are exactly the best ones: the bids skipped can't beat the worst bid kept, or none were skipped when
+     * fewer bids were found than asked for
+     */
+    public boolean isExact() {
+        int amountBids = this.bestNashProducts.length;
+        double worstKept = this.bestBidsFound == amountBids ? this.bestNashProducts[amountBids - 1] : 0;
+        return this.abandonedBound <= worstKept;
+    }
+
+    /**
+     * Constructor function
+     * @param outcomeSpace our outcomes in order of utility
+     */
+    public NashBidSearch(LazyOutcomeSpace outcomeSpace) {
+        this.outcomeSpace = outcomeSpace;
+        this.domainIndex = outcomeSpace.getDomainIndex();
+        this.totalIssues = this.domainIndex.getTotalIssues();
+        this.ownUtilities = outcomeSpace.getOwnUtilities();
+        this.encodedOutcome = new int[this.totalIssues];
+        this.currentBid = new int[this.totalIssues];
+        this.evaluator = new NashProductEvaluator(this.domainIndex);
+        this.blockOutcomes = new int[BLOCK_SIZE * this.totalIssues];
+        this.blockUtilities = new double[BLOCK_SIZE];
+        this.blockScores = new double[BLOCK_SIZE];
+    }
+
+    /**
+     * Find the bids with the best nash product with utility > minUtility
+     * @param minUtility our min acceptable utility
+     * @param opponents models of the opponents
+     * @param amountBids n# of bids to find
+     * @return at most amountBids bids, best first, with their nash product as utility
+     */
+    public List<BidDetails> search(double minUtility, Collection<OpponentModel> opponents, int amountBids) {
+        return search(minUtility, opponents, amountBids, 0);
+    }
+
+    /**
+     * Find the bids with the best nash product with utility > minUtility within a time budget
+     * @param minUtility our min acceptable utility
+     * @param opponents models of the opponents
+     * @param amountBids n# of bids to find
+     * @param budgetNanos time the search may take in nanoseconds, 0 to stop after a number of nodes instead
+     * @return at most amountBids bids, best first, with their nash product as utility
+     */
+    public List<BidDetails> search(double minUtility, Collection<OpponentModel> opponents, int amountBids,
+                                   long budgetNanos) {
+        this.timed = budgetNanos > 0;
+        this.deadline = System.nanoTime() + budgetNanos;
+        this.outOfTime = false;
+        OpponentModel[] opponentModels = opponents.toArray(new OpponentModel[0]);
+
+        if (this.bestNashProducts == null || this.bestNashProducts.length != amountBids) {
+            this.bestEncodedBids = new int[amountBids][this.totalIssues];
+            this.bestNashProducts = new double[amountBids];
+        }
+        this.bestBidsFound = 0;
+        this.bidsEvaluated = 0;
+        this.abandonedBound = 0;
+        this.parallel = false;
+
+        // outcomes are sorted best first, find where they drop to the min utility
+        int maxExhaustiveBids = ParallelOutcomeScorer.getBreakEvenOutcomes() < MAX_EXHAUSTIVE_BIDS
+                ? MAX_PARALLEL_EXHAUSTIVE_BIDS : MAX_EXHAUSTIVE_BIDS;
+        int acceptableOutcomes = this.outcomeSpace.countOutcomesAbove(minUtility, maxExhaustiveBids + 1);
+        if (acceptableOutcomes <= maxExhaustiveBids) {
+            searchOutcomes(acceptableOutcomes, opponentModels);
+        } else {
+            searchIssues(minUtility, opponentModels);
+        }
+
+        this.upperBound = this.bestBidsFound == 0 ? this.abandonedBound
+                : Math.max(this.bestNashProducts[0], this.abandonedBound);
+
+        List<BidDetails> bestBids = new ArrayList<>(this.bestBidsFound);
+        for (int i = 0; i < this.bestBidsFound; i++) {
+            bestBids.add(new BidDetails(this.domainIndex.decode(this.bestEncodedBids[i]), this.bestNashProducts[i]));
+        }
+        return bestBids;
+    }
+
+    /**
+     * @return max n# of bids above the min utility to search exhaustively, also the most outcomes other users
+     * of the outcome space generate
+     */
+    public static int getMaxExhaustiveBids() {
+        return MAX_EXHAUSTIVE_BIDS;
+    }
+
+    /**
+     * Score every outcome above the min utility, a block at a time. Outcomes that can't beat the worst
+     * of the best bids found before the block aren't scored against every opponent.
+     * Above the break-even size the outcomes are scored in parallel by ParallelOutcomeScorer
+     */
+    private void searchOutcomes(int acceptableOutcomes, OpponentModel[] opponents) {
+        this.evaluator.update(Arrays.asList(opponents));
+        int amountBids = this.bestNashProducts.length;
+        if (ParallelOutcomeScorer.isWorthIt(acceptableOutcomes)) {
+            this.parallel = true;
+            ParallelOutcomeScorer.Result result = ParallelOutcomeScorer.score(this.outcomeSpace, this.evaluator,
+                    acceptableOutcomes, amountBids, this.timed, this.deadline);
+            for (int i = 0; i < result.size(); i++) {
+                saveBid(result.getEncodedBid(i), result.getNashProduct(i));
+            }
+            this.bidsEvaluated = result.getBidsEvaluated();
+            this.abandonedBound = result.getAbandonedBound();
+            return;
+        }
+
+        long start = System.nanoTime();
+        for (int first = 0; first < acceptableOutcomes; first += BLOCK_SIZE) {
+            // out of time, the outcomes left have at most our utility as nash product
+            if ((first & (CLOCK_CHECK_INTERVAL - 1)) == 0 && isPastDeadline()) {
+                this.abandonedBound = this.outcomeSpace.getUtility(first);
+                return;
+            }
+
+            int count = Math.min(BLOCK_SIZE, acceptableOutcomes - first);
+            for (int c = 0; c < count; c++) {
+                this.outcomeSpace.getEncodedOutcome(first + c, this.encodedOutcome);
+                System.arraycopy(this.encodedOutcome, 0, this.blockOutcomes, c * this.totalIssues, this.totalIssues);
+                this.blockUtilities[c] = this.outcomeSpace.getUtility(first + c);
+            }
+            double threshold = this.bestBidsFound == amountBids ? this.bestNashProducts[amountBids - 1] : -1;
+            this.evaluator.scoreBlock(this.blockOutcomes, this.blockUtilities, count, threshold, this.blockScores);
+            this.bidsEvaluated += count;
+
+            for (int c = 0; c < count; c++) {
+                if (this.blockScores[c] < 0) continue;
+                System.arraycopy(this.blockOutcomes, c * this.totalIssues, this.encodedOutcome, 0, this.totalIssues);
+                saveBid(this.encodedOutcome, this.blockScores[c]);
+            }
+        }
+        ParallelOutcomeScorer.recordSequential(acceptableOutcomes, System.nanoTime() - start);
+    }
+
+    /**
+     * Branch and bound over the issues. The nash product of a partial bid can be at most
+     * the product of each party's utility so far plus the best it can get from the remaining issues.
+     */
+    private void searchIssues(double minUtility, OpponentModel[] opponents) {
+        this.minUtility = minUtility;
+        this.parties = opponents.length + 1;
+
+        // utility of each value of each issue for each party, ourselves first
+        this.partyUtilities = new double[this.parties][][];
+        this.partyUtilities[0] = this.ownUtilities;
+        for (int p = 1; p < this.parties; p++) {
+            double[] weights = opponents[p - 1].getWeights();
+            double[][] evaluations = opponents[p - 1].getEvaluations();
+            this.partyUtilities[p] = new double[this.totalIssues][];
+            for (int i = 0; i < this.totalIssues; i++) {
+                this.partyUtilities[p][i] = new double[evaluations[i].length];
+                for (int j = 0; j < evaluations[i].length; j++) {
+                    this.partyUtilities[p][i][j] = evaluations[i][j] * weights[i];
+                }
+            }
+        }
+
+        // best utility each party can still get from issue i onwards
+        this.maxRemainingUtilities = new double[this.parties][this.totalIssues + 1];
+        for (int p = 0; p < this.parties; p++) {
+            for (int i = this.totalIssues - 1; i >= 0; i--) {
+                double max = 0.0;
+                for (double utility : this.partyUtilities[p][i]) {
+                    if (utility > max) max = utility;
+                }
+                this.maxRemainingUtilities[p][i] = this.maxRemainingUtilities[p][i + 1] + max;
+            }
+        }
+
+        // try the most promising values of each issue first
+        this.valueOrder = new int[this.totalIssues][];
+        for (int i = 0; i < this.totalIssues; i++) {
+            final int issue = i;
+            Integer[] order = new Integer[this.domainIndex.getNumberOfValues(i)];
+            for (int j = 0; j < order.length; j++) order[j] = j;
+            Arrays.sort(order, Comparator.comparingDouble((Integer j) -> -valueBound(issue, j)));
+            this.valueOrder[i] = new int[order.length];
+            for (int j = 0; j < order.length; j++) this.valueOrder[i][j] = order[j];
+        }
+
+        this.partialUtilities = new double[this.totalIssues + 1][this.parties];
+        this.nodes = 0;
+        branch(0);
+    }
+
+    /**
+     * @return upper bound of the nash product of any bid using value j for issue i
+     */
+    private double valueBound(int i, int j) {
+        double bound = 1.0;
+        for (int p = 0; p < this.parties; p++) {
+            bound *= this.maxRemainingUtilities[p][0] - this.maxRemainingUtilities[p][i]
+                    + this.maxRemainingUtilities[p][i + 1] + this.partyUtilities[p][i][j];
+        }
+        return bound;
+    }
+
+    /**
+     * Try every value of an issue given the values chosen for the previous issues
+     */
+    private void branch(int issue) {
+        double[] partial = this.partialUtilities[issue];
+        double[] next = this.partialUtilities[issue + 1];
+
+        for (int j : this.valueOrder[issue]) {
+            this.nodes++;
+            if ((this.nodes & (CLOCK_CHECK_INTERVAL - 1)) == 0 && isPastDeadline()) this.outOfTime = true;
+            for (int p = 0; p < this.parties; p++) {
+                next[p] = partial[p] + this.partyUtilities[p][issue][j];
+            }
+
+            // we can't reach our min utility with this value
+            if (next[0] + this.maxRemainingUtilities[0][issue + 1] <= this.minUtility) continue;
+
+            double bound = 1.0;
+            for (int p = 0; p < this.parties; p++) {
+                bound *= next[p] + this.maxRemainingUtilities[p][issue + 1];
+            }
+
+            // can't beat the worst of the best bids found so far
+            if (this.bestBidsFound == this.bestNashProducts.length
+                    && bound <= this.bestNashProducts[this.bestBidsFound - 1]) continue;
+
+            // out of time, remember how good the bids we skip could have been
+            if (this.outOfTime || !this.timed && this.nodes > MAX_SEARCH_NODES) {
+                this.abandonedBound = Math.max(this.abandonedBound, bound);
+                continue;
+            }
+
+            this.currentBid[issue] = j;
+            if (issue + 1 < this.totalIssues) {
+                branch(issue + 1);
+            } else {
+                // complete bid, bound is its nash product
+                this.bidsEvaluated++;
+                saveBid(this.currentBid, bound);
+            }
+        }
+    }
+
+    /**
+     * @return true if the search has a time budget and used it up
+     */
+    private boolean isPastDeadline() {
+        return this.timed && System.nanoTime() - this.deadline > 0;
+    }
+
+    /**
+     * Keep a bid if it is one of the best found so far
+     */
+    private void saveBid(int[] encodedBid, double nashProduct) {
+        int amountBids = this.bestNashProducts.length;
+        if (this.bestBidsFound == amountBids && nashProduct <= this.bestNashProducts[amountBids - 1]) return;
+
+        // drop the worst bid if full and shift worse bids down
+        int index = this.bestBidsFound < amountBids ? this.bestBidsFound++ : amountBids - 1;
+        int[] slot = this.bestEncodedBids[index];
+        while (index > 0 && this.bestNashProducts[index - 1] < nashProduct) {
+            this.bestEncodedBids[index] = this.bestEncodedBids[index - 1];
+            this.bestNashProducts[index] = this.bestNashProducts[index - 1];
+            index--;
+        }
+        System.arraycopy(encodedBid, 0, slot, 0, this.totalIssues);
+        this.bestEncodedBids[index] = slot;
+        this.bestNashProducts[index] = nashProduct;
+    }
+}
@@ -0,0 +1,213 @@
+package group30;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Nash product of encoded bids with any number of opponents, from one flat table holding the estimated
+ * utility (issue weight * value evaluation) of every value for every opponent. Tables are refreshed
+ * only for the models whose version changed.
+ * Candidates are scored in blocks; since every utility is at most 1 the product only drops with each
+ * opponent, so a candidate is dropped as soon as it can't beat a threshold.
+ */
+public class NashProductEvaluator {
+
+    // total number of issues in the domain and n# of values of all issues
+    private int totalIssues;
+    private int totalValues;
+
+    // Position of the first value of each issue in a row of the table
+    private int[] issueOffsets;
+
+    // Estimated utility of each value for each opponent, one row of totalValues per opponent
+    private double[] opponentUtilities = new double[0];
+
+    // Model and its version each row was built from
+    private OpponentModel[] models = new OpponentModel[0];
+    private long[] versions = new long[0];
+
+    // n# of opponents in the table
+    private int opponents;
+
+    // Position in a row of each value of the candidate being scored
+    private int[] valuePositions;
+
+    // n# of opponent utilities summed since construction
+    private long opponentEvaluations;
+
+
+    /*FIELD GETTERS */
+
+    public int getOpponents() {
+        return this.opponents;
+    }
+
+    public long getOpponentEvaluations() {
+        return this.opponentEvaluations;
+    }
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     */
+    public NashProductEvaluator(DomainIndex domainIndex) {
+        this.totalIssues = domainIndex.getTotalIssues();
+        this.issueOffsets = new int[this.totalIssues];
+        for (int i = 0; i < this.totalIssues; i++) {
+            this.issueOffsets[i] = this.totalValues;
+            this.totalValues += domainIndex.getNumberOfValues(i);
+        }
+        this.valuePositions = new int[this.totalIssues];
+    }
+
+    /**
+     * Constructor function of a copy sharing the table
+     * @param shared evaluator to share the table of
+     */
+    private NashProductEvaluator(NashProductEvaluator shared) {
+        this.totalIssues = shared.totalIssues;
+        this.totalValues = shared.totalValues;
+        this.issueOffsets = shared.issueOffsets;
+        this.opponentUtilities = shared.opponentUtilities;
+        this.models = shared.models;
+        this.versions = shared.versions;
+        this.opponents = shared.opponents;
+        this.valuePositions = new int[this.totalIssues];
+    }
+
+    /**
+     * @return evaluator sharing the table, with its own state for scoring, so another thread can score
+     * candidates at the same time. It must not be updated, and neither must this one while it is used
+     */
+    public NashProductEvaluator getThreadCopy() {
+        return new NashProductEvaluator(this);
+    }
+
+    /**
+     * Bring the table up to date with the opponent models, rebuilding only the rows of models that changed
+     * @param opponents models of the opponents, in the same order every time
+     */
+    public void update(Collection<OpponentModel> opponents) {
+        int size = opponents.size();
+        if (size > this.models.length) {
+            this.models = Arrays.copyOf(this.models, size);
+            this.versions = Arrays.copyOf(this.versions, size);
+            this.opponentUtilities = Arrays.copyOf(this.opponentUtilities, size * this.totalValues);
+        }
+        this.opponents = size;
+
+        int k = 0;
+        for (OpponentModel opponent : opponents) {
+            if (this.models[k] != opponent || this.versions[k] != opponent.getVersion()) {
+                double[] weights = opponent.getWeights();
+                double[][] evaluations = opponent.getEvaluations();
+                int row = k * this.totalValues;
+                for (int i = 0; i < this.totalIssues; i++) {
+                    for (int j = 0; j < evaluations[i].length; j++) {
+                        this.opponentUtilities[row + this.issueOffsets[i] + j] = evaluations[i][j] * weights[i];
+                    }
+                }
+                this.models[k] = opponent;
+                this.versions[k] = opponent.getVersion();
+            }
+            k++;
+        }
+    }
+
+    /**
+     * @param ownUtility our utility of the bid
+     * @param encodedBid value index of each issue
+     * @return nash product of the bid, as of the last update
+     */
+    public double getNashProduct(double ownUtility, int[] encodedBid) {
+        for (int i = 0; i < this.totalIssues; i++) {
+            this.valuePositions[i] = this.issueOffsets[i] + encodedBid[i];
+        }
+        double nashProduct = ownUtility;
+        for (int k = 0; k < this.opponents; k++) {
+            nashProduct *= getOpponentUtility(k);
+        }
+        return nashProduct;
+    }
+
+    /**
+     * @param opponent index of the opponent
+     * @param issue index of the issue
+     * @param valueIndex index of the value
+     * @return estimated utility the value adds for the opponent, as of the last update
+     */
+    public double getUtility(int opponent, int issue, int valueIndex) {
+        return this.opponentUtilities[opponent * this.totalValues + this.issueOffsets[issue] + valueIndex];
+    }
+
+    /**
+     * @param opponent index of the opponent
+     * @param encodedBid value index of each issue
+     * @return estimated utility of the bid for the opponent, as of the last update
+     */
+    public double getOpponentUtility(int opponent, int[] encodedBid) {
+        int row = opponent * this.totalValues;
+        double utility = 0.0;
+        for (int i = 0; i < this.totalIssues; i++) {
+            utility += this.opponentUtilities[row + this.issueOffsets[i] + encodedBid[i]];
+        }
+        this.opponentEvaluations++;
+        return utility;
+    }
+
+    /**
+     * @param opponent index of the opponent
+     * @return version of the model the opponent's utilities are from, as of the last update
+     */
+    public long getVersion(int opponent) {
+        return this.versions[opponent];
+    }
+
+    /**
+     * Score a block of candidates, as of the last update
+     * @param candidates encoded candidates one after the other, totalIssues value indices each
+     * @param ownUtilities our utility of each candidate
+     * @param count n# of candidates in the block
+     * @param threshold candidates that can't beat this are dropped
+     * @param scores nash product of each candidate, -1 for dropped ones
+     * @return index of the best candidate that beats the threshold, -1 if none
+     */
+    public int scoreBlock(int[] candidates, double[] ownUtilities, int count, double threshold, double[] scores) {
+        int best = -1;
+        double bestScore = threshold;
+        for (int c = 0; c < count; c++) {
+            int start = c * this.totalIssues;
+            for (int i = 0; i < this.totalIssues; i++) {
+                this.valuePositions[i] = this.issueOffsets[i] + candidates[start + i];
+            }
+
+            double nashProduct = ownUtilities[c];
+            for (int k = 0; k < this.opponents && nashProduct > threshold; k++) {
+                nashProduct *= getOpponentUtility(k);
+            }
+            if (nashProduct <= threshold) {
+                scores[c] = -1;
+                continue;
+            }
+            scores[c] = nashProduct;
+            if (nashProduct > bestScore) {
+                best = c;
+                bestScore = nashProduct;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return estimated utility of an opponent for the values in valuePositions, summed in issue order
+     */
+    private double getOpponentUtility(int k) {
+        int row = k * this.totalValues;
+        double utility = 0.0;
+        for (int i = 0; i < this.totalIssues; i++) {
+            utility += this.opponentUtilities[row + this.valuePositions[i]];
+        }
+        this.opponentEvaluations++;
+        return utility;
+    }
+}
@@ -0,0 +1,166 @@
+package group30;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Local search for bids with a good nash product around bids that are likely close to the nash point,
+ * like the recent offers of the opponents and our best saved bids. From each seed it moves to the best
+ * bid that differs in the value of one issue, or if none is better to the first better bid that differs
+ * in two, until no neighbour is better. A neighbour is scored by swapping the changed values in our
+ * utility and each opponent's utility, so it costs the n# of parties instead of parties * issues.
+ */
+public class NeighbourhoodSearch extends BidSearchHeuristic {
+
+    public static final String NAME = "neighbourhood";
+
+    // n# of neighbours scored between two looks at the clock while trying double swaps, a power of 2
+    private static int CLOCK_CHECK_INTERVAL = 256;
+
+    // Min increase of the score to move, so rounding can't make the search go back and forth
+    private static double MIN_IMPROVEMENT = 1e-12;
+
+    // Bid the search is at, our utility, each opponent's utility and its score
+    private int[] current;
+    private double currentUtility;
+    private double[] currentOpponentUtilities = new double[0];
+    private double currentScore;
+
+
+    /*FIELD GETTERS */
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     * @param ownUtilities our utility of each value of each issue, see LazyOutcomeSpace.getOwnUtilities
+     * @param evaluator estimated utilities of the opponents, updated before each search
+     * @param random not used, the search is deterministic
+     */
+    public NeighbourhoodSearch(DomainIndex domainIndex, double[][] ownUtilities, NashProductEvaluator evaluator,
+                               Random random) {
+        super(domainIndex, ownUtilities, evaluator, random);
+        this.current = new int[this.totalIssues];
+    }
+
+    /**
+     * Climb from each seed to a bid no neighbour improves on
+     * @param seeds encoded bids to start from, best first
+     */
+    @Override
+    protected void run(List<int[]> seeds) {
+        if (this.currentOpponentUtilities.length < this.evaluator.getOpponents()) {
+            this.currentOpponentUtilities = new double[this.evaluator.getOpponents()];
+        }
+        for (int[] seed : seeds) {
+            if (isOutOfTime()) break;
+            climb(seed);
+        }
+    }
+
+    /**
+     * Move from a seed to better neighbours until there are none or the time is up
+     */
+    private void climb(int[] seed) {
+        moveTo(seed);
+        boolean moved = true;
+        while (moved && !isOutOfTime()) {
+            moved = trySingleSwaps() || tryDoubleSwaps();
+        }
+    }
+
+    /**
+     * Move to the best neighbour that differs in one issue, if it is better
+     * @return true if moved
+     */
+    private boolean trySingleSwaps() {
+        int bestIssue = -1;
+        int bestValue = -1;
+        double bestScore = this.currentScore + MIN_IMPROVEMENT;
+        for (int i = 0; i < this.totalIssues; i++) {
+            for (int v = 0; v < this.ownUtilities[i].length; v++) {
+                if (v == this.current[i]) continue;
+                double score = scoreSwap(i, v, -1, -1);
+                if (score > bestScore) {
+                    bestIssue = i;
+                    bestValue = v;
+                    bestScore = score;
+                }
+            }
+        }
+        if (bestIssue < 0) return false;
+        this.current[bestIssue] = bestValue;
+        moveTo(this.current);
+        return true;
+    }
+
+    /**
+     * Move to the first neighbour that differs in two issues and is better
+     * @return true if moved
+     */
+    private boolean tryDoubleSwaps() {
+        for (int i = 0; i < this.totalIssues; i++) {
+            for (int j = i + 1; j < this.totalIssues; j++) {
+                for (int v = 0; v < this.ownUtilities[i].length; v++) {
+                    if (v == this.current[i]) continue;
+                    for (int w = 0; w < this.ownUtilities[j].length; w++) {
+                        if (w == this.current[j]) continue;
+                        if ((this.lastEvaluations & (CLOCK_CHECK_INTERVAL - 1)) == 0 && isOutOfTime()) return false;
+                        if (scoreSwap(i, v, j, w) > this.currentScore + MIN_IMPROVEMENT) {
+                            this.current[i] = v;
+                            this.current[j] = w;
+                            moveTo(this.current);
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return score of the current bid with value v for issue i and, if j >= 0, value w for issue j
+     */
+    private double scoreSwap(int i, int v, int j, int w) {
+        this.lastEvaluations++;
+        double utility = this.currentUtility - this.ownUtilities[i][this.current[i]] + this.ownUtilities[i][v];
+        if (j >= 0) utility += this.ownUtilities[j][w] - this.ownUtilities[j][this.current[j]];
+        if (utility <= this.minUtility) return score(utility, 0);
+
+        double nashProduct = utility;
+        for (int k = 0; k < this.evaluator.getOpponents(); k++) {
+            double opponentUtility = this.currentOpponentUtilities[k]
+                    - this.evaluator.getUtility(k, i, this.current[i]) + this.evaluator.getUtility(k, i, v);
+            if (j >= 0) {
+                opponentUtility += this.evaluator.getUtility(k, j, w) - this.evaluator.getUtility(k, j, this.current[j]);
+            }
+            nashProduct *= opponentUtility;
+        }
+        return score(utility, nashProduct);
+    }
+
+    /**
+     * Make a bid the current one, computing its utilities from scratch so no rounding adds up,
+     * and keep it if it is the best acceptable bid so far
+     */
+    private void moveTo(int[] encodedBid) {
+        if (encodedBid != this.current) System.arraycopy(encodedBid, 0, this.current, 0, this.totalIssues);
+        this.currentUtility = getOwnUtility(this.current);
+        double nashProduct = this.currentUtility <= this.minUtility ? 0
+                : this.evaluator.getNashProduct(this.currentUtility, this.current);
+        for (int k = 0; k < this.evaluator.getOpponents(); k++) {
+            double opponentUtility = 0.0;
+            for (int i = 0; i < this.totalIssues; i++) {
+                opponentUtility += this.evaluator.getUtility(k, i, this.current[i]);
+            }
+            this.currentOpponentUtilities[k] = opponentUtility;
+        }
+        this.currentScore = score(this.currentUtility, nashProduct);
+        keepBest(this.current, this.currentUtility, nashProduct);
+    }
+}
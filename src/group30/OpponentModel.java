@@ -1,23 +1,25 @@
 package group30;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import negotiator.Bid;
 import negotiator.BidHistory;
-import negotiator.bidding.BidDetails;
-import negotiator.issue.Issue;
-import negotiator.issue.Value;
-import negotiator.issue.ValueDiscrete;
-import negotiator.utility.EvaluatorDiscrete;
 
 /**
  * 1 entry per opponent
+ * Bids are only counted when they come in, the weights and evaluations are recomputed the next time
+ * they are read, so several bids between our turns cost one recomputation.
+ * A bid repeating the previous one only makes a run of the history longer, its values are counted
+ * for the whole run at once.
  */
 public class OpponentModel {
 
-    // Bidding history of opponent
-    private BidHistory bidHistory;
+    // n# of recent rounds to tell how hardHeaded the opponent is
+    public static int RECENT_ROUNDS = 10;
+
+    // Bidding history of opponent, with our utility and the time of each bid, in runs of identical bids
+    private ColumnarBidHistory history;
+
+    // Index of the domain, maps the values of each issue to a small int
+    private DomainIndex domainIndex;
 
     // total number of issues in the domain
     private int totalIssues;
@@ -25,17 +27,46 @@ public class OpponentModel {
     // IDs of the issues
     private int[] issueIds;
 
-    // Values(preferences) of the issues
-    private EvaluatorDiscrete[] issues;
+    // Estimated weight of each issue
+    private double[] weights;
+
+    // Estimated evaluation of each value of each issue, by value index
+    private double[][] evaluations;
+
+    // Frequency (n# of times) each value of each issue has been offered, by value index
+    // kept up to date in addBid so the history never has to be re-walked
+    private int[][] valueCounts;
+
+    // n# of repeats of the bid of the last run of the history not yet in valueCounts
+    private int uncountedRepeats;
+
+    // Encoded copy of the bid being added, reused to avoid allocating
+    private int[] encodedBid;
 
-    // List for historical utility values
-    List<Double> uHistorical;
+    // n# of changes of each issue counted by hardHeaded, reused to avoid allocating
+    private int[] changesIssues;
+
+    // n# of bids added, changes whenever the estimated utilities change
+    private long version;
+
+    // true if bids were added since the weights and evaluations were last computed
+    private boolean dirty;
+
+    // n# of times the weights and evaluations were computed
+    private int recomputes;
 
 
     /*FIELD GETTERS */
 
+    public ColumnarBidHistory getHistory() {
+        return this.history;
+    }
+
+    /**
+     * @return bidding history for the Genius APIs, built from the columnar history when called
+     */
     public BidHistory getBidHistory() {
-        return this.bidHistory;
+        return this.history.toBidHistory();
     }
 
     public int getTotalIssues() {
@@ -46,70 +77,167 @@ public class OpponentModel {
         return this.issueIds;
     }
 
-    public EvaluatorDiscrete[] getIssues() {
-        return this.issues;
+    public double[] getWeights() {
+        this.update();
+        return this.weights;
+    }
+
+    public double[][] getEvaluations() {
+        this.update();
+        return this.evaluations;
+    }
+
+    /**
+     * @return n# of bids added, estimated utilities stay the same as long as the version does
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    public int getRecomputes() {
+        return this.recomputes;
+    }
+
+    /**
+     * @return n# of recent bids getRecentBid can copy, at most RECENT_ROUNDS
+     */
+    public int getRecentBidsSize() {
+        return this.history == null ? 0 : Math.min(RECENT_ROUNDS, this.history.size());
     }
 
     /**
      * Constructor function
-     * @param exampleBid An example bid used to initialise issue space
+     * @param domainIndex index of the domain being negotiated
      */
-    public OpponentModel(Bid exampleBid) {
+    public OpponentModel(DomainIndex domainIndex) {
 
-        this.bidHistory = new BidHistory();
+        this.history = new ColumnarBidHistory(domainIndex);
+        this.domainIndex = domainIndex;
 
-        List<Issue> issues = exampleBid.getIssues();
-        this.totalIssues = issues.size();
-        this.issueIds = new int[getTotalIssues()];
-        this.uHistorical = new ArrayList<>();
+        this.totalIssues = domainIndex.getTotalIssues();
+        this.issueIds = domainIndex.getIssueIds();
 
-        // Map issue IDs
+        // Create evaluation tables and frequency counters for each issue
+        this.weights = new double[getTotalIssues()];
+        this.evaluations = new double[getTotalIssues()][];
+        this.valueCounts = new int[getTotalIssues()][];
         for (int i = 0; i < getTotalIssues(); i++) {
-            int issueID = exampleBid.getIssues().get(i).getNumber();
-            getIssueIds()[i] = issueID;
+            this.evaluations[i] = new double[domainIndex.getNumberOfValues(i)];
+            this.valueCounts[i] = new int[domainIndex.getNumberOfValues(i)];
         }
+        this.encodedBid = new int[getTotalIssues()];
+        this.changesIssues = new int[getTotalIssues()];
+    }
 
-        // Create evaluators for each issue
-        this.issues = new EvaluatorDiscrete[getTotalIssues()];
-        for (int i = 0; i < getTotalIssues(); i++) {
-            getIssues()[i] = new EvaluatorDiscrete();
+    /**
+     * Copy of the estimated utilities as they are now, for searching on another thread.
+     * The copy only estimates utilities, it has no bidding history
+     * @return snapshot of the model
+     */
+    public OpponentModel getSnapshot() {
+        this.update();
+        return new OpponentModel(this);
+    }
+
+    /**
+     * Constructor function of a snapshot
+     * @param model model to copy the estimated utilities of
+     */
+    private OpponentModel(OpponentModel model) {
+        this.domainIndex = model.domainIndex;
+        this.totalIssues = model.totalIssues;
+        this.issueIds = model.issueIds;
+        this.version = model.version;
+        this.weights = model.weights.clone();
+        this.evaluations = new double[model.evaluations.length][];
+        for (int i = 0; i < this.evaluations.length; i++) {
+            this.evaluations[i] = model.evaluations[i].clone();
         }
     }
 
     /**
-     * Add bid to the opponent's bidding history
+     * Add bid to the opponent's bidding history, without our utility or time
      * @param bid bid to add to history
      */
     public void addBid(Bid bid) {
-        getBidHistory().add(new BidDetails(bid, 0));
-        this.setWeights();
+        addBid(bid, 0, 0);
+    }
+
+    /**
+     * Add bid to the opponent's bidding history
+     * @param bid bid to add to history
+     * @param utility our utility of the bid
+     * @param time time the bid was received
+     */
+    public void addBid(Bid bid, double utility, double time) {
+        this.domainIndex.encode(bid, this.encodedBid);
+
+        // Update the frequency counters with the values of the new bid,
+        // repeats of a bid are counted at once when their run ends or the weights are computed
+        if (this.history.add(this.encodedBid, utility, time)) {
+            this.uncountedRepeats++;
+        } else {
+            this.countRepeats(this.history.getRuns() - 2);
+            for (int i = 0; i < getTotalIssues(); i++) {
+                this.valueCounts[i][this.encodedBid[i]]++;
+            }
+        }
+
+        // weights are recomputed when they are needed
+        this.version++;
+        this.dirty = true;
+    }
+
+    /**
+     * Copy one of the last RECENT_ROUNDS bids
+     * @param age 0 for the newest bid, at most getRecentBidsSize() - 1
+     * @param encodedBid array of size getTotalIssues() to write to
+     */
+    public void getRecentBid(int age, int[] encodedBid) {
+        this.history.getEncodedBid(this.history.size() - 1 - age, encodedBid);
+    }
+
+    /**
+     * Recompute the weights and evaluations if bids were added since the last time
+     */
+    private void update() {
+        if (this.dirty) this.setWeights();
+    }
+
+    /**
+     * Add the repeats of the bid of a run not counted yet to the frequency counters
+     * @param run index of the run in the history
+     */
+    private void countRepeats(int run) {
+        if (this.uncountedRepeats == 0) return;
+        for (int i = 0; i < getTotalIssues(); i++) {
+            this.valueCounts[i][this.history.getRunValue(run, i)] += this.uncountedRepeats;
+        }
+        this.uncountedRepeats = 0;
     }
 
     /**
      * Set weights  & values of each issue
      */
     public void setWeights() {
+        this.dirty = false;
+        this.recomputes++;
+        this.countRepeats(this.history.getRuns() - 1);
 
-        HashMap<ValueDiscrete, Double> values = this.setWeightsIssueValues();
+        double[] values = this.setWeightsIssueValues();
 
         //setting weights based on frequency ??
-        int[] changesIssues = getChangesIssues();
         double[] weights = new double[getTotalIssues()];
         double totalWeight = 0.0;
-        int rounds = getBidHistory().size();
+        int rounds = this.history.size();
 
         // Iterate over all the issues
         for (int i = 0; i < getTotalIssues(); i++) {
 
             //iterate over the options to extract the frequency
-            for (ValueDiscrete value : values.keySet()) {
-                try {
-                    double frequency = values.get(value).doubleValue();
-
-                    weights[i] +=  Math.pow(frequency,2) / Math.pow(rounds, 2);
-
-                } catch (Exception e) {
-                    e.printStackTrace();
+            for (double frequency : values) {
+                if (frequency > 0) {
+                    weights[i] += Math.pow(frequency, 2) / Math.pow(rounds, 2);
                 }
             }
             // Keep the total weight to normalize
@@ -118,8 +246,7 @@ public class OpponentModel {
 
         // Normalize the weights of the issues
         for (int i = 0; i < getTotalIssues(); i++) {
-            double normalizedWeight = weights[i] / totalWeight;
-            getIssues()[i].setWeight(normalizedWeight);
+            this.weights[i] = weights[i] / totalWeight;
         }
 
     }
@@ -127,85 +254,44 @@ public class OpponentModel {
     /**
      * Set weights for the values of each issue using frequency analysis
      */
-    private HashMap<ValueDiscrete, Double> setWeightsIssueValues() {
-        HashMap<ValueDiscrete, Double> values = new HashMap<ValueDiscrete, Double>();
+    private double[] setWeightsIssueValues() {
+        // frequency (n# of times) of the options, by domain wide value key
+        // counts of values sharing a key add up across the issues seen so far
+        double[] values = new double[this.domainIndex.getTotalValueKeys()];
+
+        // max n# of times a value(option) was used
+        double max = 0.0;
 
         // Iterate through issues
         for (int i = 0; i < getTotalIssues(); i++) {
-            // keys of HashMap are the discrete values of the issues (options)
-            // values of HashMap is the frequency (n# of times) of the options
-
-            // Iterate through bidding history
-            // calculate issue frequency
-            for (int j = 0; j < getBidHistory().size(); j++) {
-                ValueDiscrete value = (ValueDiscrete) (getBidHistory().getHistory().get(j).getBid()
-                        .getValue(getIssueIds()[i]));
-                if (values.containsKey(value)) {
-                    values.put(value, values.get(value) + 1);
-                } else {
-                    values.put(value, 1.0);
-                }
-            }
-
-            // Get max n# of times a value(option) was used
-            double max = 0.0;
-            for (ValueDiscrete value : values.keySet()) {
-                if (values.get(value) > max)
-                    max = values.get(value);
+            int[] counts = this.valueCounts[i];
+
+            // Add the counted frequencies of this issue
+            for (int j = 0; j < counts.length; j++) {
+                int key = this.domainIndex.getValueKey(i, j);
+                values[key] += counts[j];
+                if (values[key] > max)
+                    max = values[key];
             }
 
             // evaluation values of each issue = n# times each value was used divided by max n# times value was used
-            // (max is 1)
-            for (ValueDiscrete value : values.keySet()) {
-                try {
-                    int rounds = getBidHistory().size();
-                    //populating the evaluation of each discrete issue for every issue to calculate utility
-                    getIssues()[i].setEvaluationDouble(value, values.get(value) / max);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+            // (max is 1), values never offered evaluate to 0
+            for (int j = 0; j < counts.length; j++) {
+                this.evaluations[i][j] = values[this.domainIndex.getValueKey(i, j)] / max;
             }
         }
 
-        //return the hashmap because the frequency needs to be used in the weight calculation
+        //return the frequencies because they need to be used in the weight calculation
         return values;
     }
 
-    /**
-     * @return an array of the frequency of change of each issue
-     */
-    private int[] getChangesIssues()
-    {
-        return getChangesIssues(getBidHistory().size());
-    }
-
     /**
      * @return an array of the frequency of change of each issue for the last x rounds
      */
     private int[] getChangesIssues(int rounds) {
-        // store the frequency (n# of times) each issue has changed
-        int[] frequencyChange = new int[getTotalIssues()];
-
-        // Iterate through issues
-        for (int i = 0; i < getTotalIssues(); i++) {
-            Value prevRoundValue = null;
-            Value currentValue;
-            int count = 0;
-
-            // Iterate over the last x rounds bids from the bidding history
-            // backwards iteration to simplify first iteration
-            for (int j=getBidHistory().size()-1; j>getBidHistory().size()-rounds-1; j--){
-                currentValue = getBidHistory().getHistory().get(j).getBid().getValue(getIssueIds()[i]);
-
-                // If it's not the first value and the current value is different from the previous one,
-                // value has changed so increase frequency count
-                if (prevRoundValue != null && !prevRoundValue.equals(currentValue))  count++;
-
-                prevRoundValue = currentValue;
-            }
-            frequencyChange[i] = count;
-        }
-        return frequencyChange;
+        // values only change where a run of identical bids ends, so only those are compared
+        this.history.countChanges(this.history.size() - rounds, this.history.size(), this.changesIssues);
+        return this.changesIssues;
     }
 
     /**
@@ -217,10 +303,10 @@ public class OpponentModel {
     public Double hardHeaded(int rounds)
     {
         // bidHistory size must be at least equal to round n#
-        if (getBidHistory().size() < rounds) return null;
+        if (this.history.size() < rounds) return null;
 
-        int[] frequencyChange = this.getChangesIssues(rounds);
         int sum = 0;
+        int[] frequencyChange = this.getChangesIssues(rounds);
         for (int count: frequencyChange){
             sum += count;
         }
@@ -235,38 +321,23 @@ public class OpponentModel {
      * @return estimated utility for that bid
      */
     public double getOpponentUtility(Bid bid) {
-        double utility = 0.0;
+        return getOpponentUtility(this.domainIndex.encode(bid));
+    }
 
-        //Extract bid values hashMap
-        HashMap<Integer, Value> bidValues = bid.getValues();
+    /**
+     * Calculate estimated utility of opponent for an encoded bid, without allocating
+     * @param encodedBid value index of each issue, see DomainIndex
+     * @return estimated utility for that bid
+     */
+    public double getOpponentUtility(int[] encodedBid) {
+        this.update();
+        double utility = 0.0;
 
-        // Iterate over the issues, for each issue extract the opponent's pick
-        // we extract the pick so we can calculate the total utility of the
-        // opponent's bid
+        // u(i1, i2, i3, i4) = w1 * u(i1) + w2 * u(i2 ) + w3 * u(i3) + w4 * u(i4)
         for (int i = 0; i < getTotalIssues(); i++) {
-            // Get weight of current issue
-            double weight = getIssues()[i].getWeight();
-
-            //ValueDiscrete -e.g. chips and nuts
-            ValueDiscrete value = (ValueDiscrete) bidValues.get(getIssueIds()[i]);
-
-            //utility is the preference for a discrete issue
-            if (( getIssues()[i]).getValues().contains(value)) {
-                //converting Double class (object - abstract type) to a double built-in type (see example below)
-                //getDoubleValue(ValueDiscrete value) method returns a Double object
-                // u(i1, i2, i3, i4) = w1 * u(i1) + w2 * u(i2 ) + w3 ∑ u(i3) + w4 * u(i4)
-                utility += getIssues()[i].getDoubleValue(value).doubleValue() * weight;
-            }
+            utility += this.evaluations[i][encodedBid[i]] * this.weights[i];
         }
         //this is the utility of the entire bid
         return utility;
     }
-
-    /**
-     * Add our utility based on opponent's bidding history
-     * @param lastReceivedBidUtility
-     */
-    public void adduHistorical(double lastReceivedBidUtility) {
-        this.uHistorical.add(lastReceivedBidUtility);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package group30;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import negotiator.AgentID;
+
+/**
+ * The opponents of a session, each given the next dense index when its first message arrives,
+ * so their models can be kept in arrays and evaluated in one pass without looking up agent IDs.
+ */
+public class OpponentRegistry {
+
+    // Index of each opponent, in order of their first message
+    private Map<AgentID, Integer> indices = new HashMap<>();
+
+    // ID and model of each opponent, by index
+    private List<AgentID> agentIds = new ArrayList<>();
+    private List<OpponentModel> models = new ArrayList<>();
+
+    // Read only view of the models
+    private List<OpponentModel> modelsView = Collections.unmodifiableList(this.models);
+
+
+    /*FIELD GETTERS */
+
+    public int size() {
+        return this.models.size();
+    }
+
+    /**
+     * @return models of the opponents by index, changes as opponents are added
+     */
+    public List<OpponentModel> getModels() {
+        return this.modelsView;
+    }
+
+    /**
+     * @return index of an opponent, -1 if it hasn't been added
+     */
+    public int getIndex(AgentID agentId) {
+        Integer index = this.indices.get(agentId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return ID of the opponent with an index
+     */
+    public AgentID getAgentId(int index) {
+        return this.agentIds.get(index);
+    }
+
+    /**
+     * @return model of the opponent with an index
+     */
+    public OpponentModel getModel(int index) {
+        return this.models.get(index);
+    }
+
+    /**
+     * Add a new opponent
+     * @param agentId ID of the opponent
+     * @param model model of the opponent
+     * @return index of the opponent
+     */
+    public int add(AgentID agentId, OpponentModel model) {
+        int index = this.models.size();
+        this.indices.put(agentId, index);
+        this.agentIds.add(agentId);
+        this.models.add(model);
+        return index;
+    }
+}
@@ -0,0 +1,127 @@
+package group30;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.function.ToDoubleFunction;
+import negotiator.Bid;
+
+/**
+ * Estimated utility of bids for each opponent, kept with the version of the opponent model it was
+ * computed from. A bid is encoded and our utility computed once, and an opponent's utility is only
+ * computed again when that opponent's model changed, so bids can be rescored exactly every turn.
+ * Utilities are read from a NashProductEvaluator, which the caller keeps up to date with the models,
+ * so a cached nash product is the same as the evaluator's.
+ */
+public class OpponentUtilityCache {
+
+    // Index of the domain, to encode bids as value indices
+    private DomainIndex domainIndex;
+
+    // Estimated utility of each value for each opponent and the model versions they are from
+    private NashProductEvaluator evaluator;
+
+    // Cached utilities of each bid
+    private HashMap<Bid, Entry> entries;
+
+    // n# of the current pass over the bids, entries not used in the last pass are evicted
+    private int pass;
+
+    // n# of opponent utilities read from the cache and computed again
+    private long hits;
+    private long refreshes;
+
+
+    /*FIELD GETTERS */
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getRefreshes() {
+        return this.refreshes;
+    }
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     * @param evaluator estimated utilities of the opponents, updated by the caller before reading the cache
+     */
+    public OpponentUtilityCache(DomainIndex domainIndex, NashProductEvaluator evaluator) {
+        this.domainIndex = domainIndex;
+        this.evaluator = evaluator;
+        this.entries = new HashMap<>();
+    }
+
+    /**
+     * @param bid bid to score
+     * @param ownUtility our utility of a bid, only asked the first time a bid is scored
+     * @return nash product of the bid with the opponent models as of the last update of the evaluator
+     */
+    public double getNashProduct(Bid bid, ToDoubleFunction<Bid> ownUtility) {
+        Entry entry = this.entries.get(bid);
+        if (entry == null) {
+            entry = new Entry(this.domainIndex.encode(bid), ownUtility.applyAsDouble(bid));
+            this.entries.put(bid, entry);
+        }
+        entry.pass = this.pass;
+
+        int opponents = this.evaluator.getOpponents();
+        if (entry.utilities.length < opponents) entry.grow(opponents);
+
+        double nashProduct = entry.ownUtility;
+        for (int k = 0; k < opponents; k++) {
+            long version = this.evaluator.getVersion(k);
+            if (entry.versions[k] != version) {
+                entry.utilities[k] = this.evaluator.getOpponentUtility(k, entry.encodedBid);
+                entry.versions[k] = version;
+                this.refreshes++;
+            } else {
+                this.hits++;
+            }
+            nashProduct *= entry.utilities[k];
+        }
+        return nashProduct;
+    }
+
+    /**
+     * Forget the bids not scored since the last call, and start a new pass
+     */
+    public void evictUnused() {
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().pass != this.pass) iterator.remove();
+        }
+        this.pass++;
+    }
+
+    /**
+     * Encoded bid, our utility and the utility of each opponent with the model version it is from
+     */
+    private static class Entry {
+        private int[] encodedBid;
+        private double ownUtility;
+        private double[] utilities = new double[0];
+        private long[] versions = new long[0];
+        private int pass;
+
+        Entry(int[] encodedBid, double ownUtility) {
+            this.encodedBid = encodedBid;
+            this.ownUtility = ownUtility;
+        }
+
+        /**
+         * Make room for more opponents, whose utilities aren't computed yet
+         */
+        void grow(int opponents) {
+            int known = this.utilities.length;
+            this.utilities = Arrays.copyOf(this.utilities, opponents);
+            this.versions = Arrays.copyOf(this.versions, opponents);
+            Arrays.fill(this.versions, known, opponents, -1);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package group30;
+
+import java.util.Random;
+import negotiator.Bid;
+import negotiator.utility.AdditiveUtilitySpace;
+import negotiator.utility.Evaluator;
+import negotiator.utility.EvaluatorDiscrete;
+
+/**
+ * Our utility of a bid as a sum of table lookups, one per issue, instead of going through the evaluators of
+ * the utility space. The terms are added in issue order like AdditiveUtilitySpace.getUtility. At construction
+ * every entry of the tables is checked to be the issue weight times the evaluation of the value, read from a
+ * discrete evaluator of the utility space, and the sums are compared with the utility space on a sample of
+ * bids. If an issue has another kind of evaluator, an entry differs or a sampled sum differs in the last bit,
+ * the utility space is used instead. The sample only confirms the utility space adds the terms the same way,
+ * it can't prove it for every bid.
+ * Encoding a bid costs more than the sum, so the utility of recently seen bid instances is cached.
+ */
+public class OwnUtilityEvaluator {
+
+    // n# of bids the sums are compared on, and size of the cache, a power of 2
+    private static int CHECKED_BIDS = 32;
+    private static int CACHE_SIZE = 64;
+
+    // Index of the domain, to encode bids as value indices
+    private DomainIndex domainIndex;
+
+    // Our utility space, used when the tables don't give exactly the same utility
+    private AdditiveUtilitySpace utilitySpace;
+
+    // Our utility of each value of each issue (issue weight * value evaluation)
+    private double[][] ownUtilities;
+
+    // false if the tables aren't made of the weights and evaluations of the utility space, or a sampled sum differs
+    private boolean exact = true;
+
+    // Recently evaluated bids and their utility, by the identity hash of the bid
+    private Bid[] cachedBids;
+    private double[] cachedUtilities;
+
+    // Encoded bid being evaluated
+    private int[] encodedBid;
+
+
+    /*FIELD GETTERS */
+
+    public boolean isExact() {
+        return this.exact;
+    }
+
+    /**
+     * Constructor function
+     * @param domainIndex index of the domain
+     * @param ownUtilities our utility of each value of each issue, see LazyOutcomeSpace.getOwnUtilities
+     * @param utilitySpace our utility space
+     */
+    public OwnUtilityEvaluator(DomainIndex domainIndex, double[][] ownUtilities, AdditiveUtilitySpace utilitySpace) {
+        this.domainIndex = domainIndex;
+        this.ownUtilities = ownUtilities;
+        this.utilitySpace = utilitySpace;
+        this.cachedBids = new Bid[CACHE_SIZE];
+        this.cachedUtilities = new double[CACHE_SIZE];
+        this.encodedBid = new int[domainIndex.getTotalIssues()];
+
+        this.exact = isMadeOf(utilitySpace);
+        Random random = new Random(CHECKED_BIDS);
+        for (int i = 0; i < CHECKED_BIDS && this.exact; i++) {
+            Bid bid = domainIndex.getDomain().getRandomBid(random);
+            this.exact = getUtility(domainIndex.encode(bid)) == utilitySpace.getUtility(bid);
+        }
+    }
+
+    /**
+     * @return true if every issue has a discrete evaluator and the table of each issue holds exactly its weight
+     * times the evaluation of each value
+     */
+    private boolean isMadeOf(AdditiveUtilitySpace utilitySpace) {
+        for (int i = 0; i < this.ownUtilities.length; i++) {
+            int issueNumber = this.domainIndex.getIssueIds()[i];
+            Evaluator evaluator = utilitySpace.getEvaluator(issueNumber);
+            if (!(evaluator instanceof EvaluatorDiscrete)) return false;
+            for (int j = 0; j < this.ownUtilities[i].length; j++) {
+                try {
+                    double utility = utilitySpace.getWeight(issueNumber)
+                            * ((EvaluatorDiscrete) evaluator).getEvaluation(this.domainIndex.getValue(i, j));
+                    if (this.ownUtilities[i][j] != utility) return false;
+                } catch (Exception e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return our utility of a bid, 0 for no bid
+     */
+    public double getUtility(Bid bid) {
+        if (bid == null) return 0.0;
+
+        int slot = System.identityHashCode(bid) & (CACHE_SIZE - 1);
+        if (this.cachedBids[slot] == bid) return this.cachedUtilities[slot];
+
+        double utility = this.exact
+                ? getUtility(this.domainIndex.encode(bid, this.encodedBid))
+                : this.utilitySpace.getUtility(bid);
+        this.cachedBids[slot] = bid;
+        this.cachedUtilities[slot] = utility;
+        return utility;
+    }
+
+    /**
+     * @return our utility of an encoded bid
+     */
+    public double getUtility(int[] encodedBid) {
+        double utility = 0.0;
+        for (int i = 0; i < encodedBid.length; i++) {
+            utility += this.ownUtilities[i][encodedBid[i]];
+        }
+        return utility;
+    }
+
+    /**
+     * @param bid bid to evaluate
+     * @param time time between 0 and 1
+     * @return our utility of a bid discounted to a time, like AbstractUtilitySpace.getUtilityWithDiscount
+     */
+    public double getUtilityWithDiscount(Bid bid, double time) {
+        double utility = getUtility(bid);
+        double discountFactor = this.utilitySpace.getDiscountFactor();
+        if (discountFactor <= 0.0 || discountFactor >= 1.0) return utility;
+        return utility * Math.pow(discountFactor, time);
+    }
+}
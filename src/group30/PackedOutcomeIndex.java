@@ -0,0 +1,160 @@
+package group30;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Outcomes in order of descending utility, each stored as a bid packed in a long (see DomainIndex.pack)
+ * and its utility in a parallel column: 16 bytes per outcome instead of a BidDetails, Bid and HashMap.
+ * The columns are either arrays or direct buffers outside the heap.
+ * One thread at a time may add outcomes while others read the ones added before.
+ */
+public class PackedOutcomeIndex {
+
+    // Capacity of a new index, doubled when full
+    private static int INITIAL_CAPACITY = 64;
+
+    // true if the columns are stored outside the heap
+    private boolean offHeap;
+
+    // Columns of the outcomes, replaced by bigger ones when full. Written before the size and published
+    // as one object through a volatile field, so a reader that sees a size or a new set of columns also
+    // sees the outcomes below it
+    private volatile Columns columns;
+
+    // n# of outcomes stored
+    private volatile int size;
+
+
+    /*FIELD GETTERS */
+
+    public boolean isOffHeap() {
+        return this.offHeap;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Constructor function
+     * @param offHeap store the outcomes in direct buffers outside the heap
+     */
+    public PackedOutcomeIndex(boolean offHeap) {
+        this.offHeap = offHeap;
+        this.columns = new Columns(offHeap, INITIAL_CAPACITY, null, 0);
+    }
+
+    /**
+     * Add an outcome after the ones added before, which must have a higher or equal utility
+     * @param packedBid packed bid
+     * @param utility our utility of the bid
+     */
+    public void add(long packedBid, double utility) {
+        Columns columns = this.columns;
+        if (this.size == columns.capacity) {
+            columns = new Columns(this.offHeap, 2 * columns.capacity, columns, this.size);
+            this.columns = columns;
+        }
+        columns.set(this.size, packedBid, utility);
+        this.size++;
+    }
+
+    /**
+     * @return packed bid of an outcome
+     * @param index position of the outcome from best to worst
+     */
+    public long getPackedBid(int index) {
+        return this.columns.getPackedBid(index);
+    }
+
+    /**
+     * @return our utility of an outcome
+     * @param index position of the outcome from best to worst
+     */
+    public double getUtility(int index) {
+        return this.columns.getUtility(index);
+    }
+
+    /**
+     * @param minUtility min utility
+     * @param size n# of first outcomes to look at, at most size()
+     * @return n# of outcomes with utility > minUtility, which are the first ones
+     */
+    public int countAbove(double minUtility, int size) {
+        Columns columns = this.columns;
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (columns.getUtility(middle) > minUtility) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Packed bid and utility columns of a fixed capacity, either arrays or direct buffers outside the heap
+     */
+    private static class Columns {
+
+        // Columns on the heap
+        private final long[] packedBids;
+        private final double[] utilities;
+
+        // Columns outside the heap
+        private final LongBuffer packedBidBuffer;
+        private final DoubleBuffer utilityBuffer;
+
+        // Room for outcomes
+        private final int capacity;
+
+        /**
+         * @param offHeap store the outcomes in direct buffers outside the heap
+         * @param capacity room for outcomes
+         * @param previous columns to copy the outcomes from, null if none
+         * @param size n# of outcomes to copy
+         */
+        Columns(boolean offHeap, int capacity, Columns previous, int size) {
+            this.capacity = capacity;
+            if (offHeap) {
+                this.packedBids = null;
+                this.utilities = null;
+                this.packedBidBuffer = ByteBuffer.allocateDirect(8 * capacity)
+                        .order(ByteOrder.nativeOrder()).asLongBuffer();
+                this.utilityBuffer = ByteBuffer.allocateDirect(8 * capacity)
+                        .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+                for (int i = 0; i < size; i++) {
+                    this.packedBidBuffer.put(i, previous.packedBidBuffer.get(i));
+                    this.utilityBuffer.put(i, previous.utilityBuffer.get(i));
+                }
+            } else {
+                this.packedBids = previous == null ? new long[capacity] : Arrays.copyOf(previous.packedBids, capacity);
+                this.utilities = previous == null ? new double[capacity] : Arrays.copyOf(previous.utilities, capacity);
+                this.packedBidBuffer = null;
+                this.utilityBuffer = null;
+            }
+        }
+
+        long getPackedBid(int index) {
+            return this.packedBids != null ? this.packedBids[index] : this.packedBidBuffer.get(index);
+        }
+
+        double getUtility(int index) {
+            return this.utilities != null ? this.utilities[index] : this.utilityBuffer.get(index);
+        }
+
+        void set(int index, long packedBid, double utility) {
+            if (this.packedBids != null) {
+                this.packedBids[index] = packedBid;
+                this.utilities[index] = utility;
+            } else {
+                this.packedBidBuffer.put(index, packedBid);
+                this.utilityBuffer.put(index, utility);
+            }
+        }
+    }
+}
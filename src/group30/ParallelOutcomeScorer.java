@@ -0,0 +1,317 @@
+package group30;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scores a slice of the outcomes on a dedicated fork join pool, splitting it into ranges scored on
+ * different cores that each keep their own best bids, which are merged into the best bids of the slice.
+ * The pool is shared by all agents in the JVM but not with the common pool, so other code using that
+ * doesn't slow our turns down. Its size is the n# of processors, or the group30.parallelism system property.
+ * Forking costs a fixed amount of time, so slices are only scored in parallel above a break-even size,
+ * measured from the time sequential scoring takes per outcome and the overhead parallel scoring adds.
+ */
+public class ParallelOutcomeScorer {
+
+    // n# of threads scoring outcomes, parallel scoring is off if 1
+    private static int PARALLELISM = Integer.getInteger("group30.parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    // n# of ranges per thread a slice is split into, so threads that finish early can take over work
+    private static int RANGES_PER_THREAD = 4;
+
+    // Min n# of outcomes in a range
+    private static int MIN_RANGE_SIZE = 256;
+
+    // Overhead of parallel scoring in nanoseconds assumed until it has been measured
+    private static double INITIAL_OVERHEAD_NANOS = 50000;
+
+    // Weight of a new measurement in the estimates
+    private static double SMOOTHING = 0.25;
+
+    // Min n# of outcomes scored for a measurement to be used
+    private static int MIN_MEASURED_OUTCOMES = 1024;
+
+    // n# of outcomes between two looks at the clock, a power of 2
+    private static int CLOCK_CHECK_INTERVAL = 1024;
+
+    // One in this many slices below the break-even size is scored in parallel anyway, so the overhead is
+    // measured again and a bad measurement, like the first one while the threads start, doesn't stick
+    private static int PROBE_INTERVAL = 64;
+
+    // Threads shared by all agents in the JVM
+    private static ForkJoinPool pool;
+
+    // Time to score an outcome sequentially, 0 until measured, and the time parallel scoring adds
+    private static volatile double nanosPerOutcome;
+    private static volatile double overheadNanos = INITIAL_OVERHEAD_NANOS;
+
+    // n# of slices large enough to measure scored sequentially since the last probe, counted by all agents
+    private static AtomicInteger slicesSinceProbe = new AtomicInteger();
+
+
+    /*FIELD GETTERS */
+
+    public static int getParallelism() {
+        return PARALLELISM;
+    }
+
+    public static double getNanosPerOutcome() {
+        return nanosPerOutcome;
+    }
+
+    public static double getOverheadNanos() {
+        return overheadNanos;
+    }
+
+    /**
+     * @return n# of outcomes above which parallel scoring is faster, max value until it can be estimated
+     */
+    public static double getBreakEvenOutcomes() {
+        if (PARALLELISM < 2 || nanosPerOutcome == 0) return Double.MAX_VALUE;
+        return overheadNanos / (nanosPerOutcome * (1 - 1.0 / PARALLELISM));
+    }
+
+    /**
+     * @param outcomes n# of outcomes to score
+     * @return true if scoring them in parallel is expected to be faster, or to measure it again
+     */
+    public static boolean isWorthIt(int outcomes) {
+        if (outcomes > getBreakEvenOutcomes()) return true;
+        if (PARALLELISM < 2 || nanosPerOutcome == 0 || outcomes < MIN_MEASURED_OUTCOMES) return false;
+        return slicesSinceProbe.updateAndGet(slices -> slices + 1 == PROBE_INTERVAL ? 0 : slices + 1) == 0;
+    }
+
+    /**
+     * Measure sequential scoring
+     * @param outcomes n# of outcomes scored
+     * @param nanos time it took
+     */
+    public static void recordSequential(int outcomes, long nanos) {
+        if (outcomes < MIN_MEASURED_OUTCOMES) return;
+        double measured = nanos / (double) outcomes;
+        nanosPerOutcome = nanosPerOutcome == 0 ? measured : nanosPerOutcome + SMOOTHING * (measured - nanosPerOutcome);
+    }
+
+    /**
+     * Measure parallel scoring, as the time it took on top of the time the threads spent scoring
+     * @param outcomes n# of outcomes scored
+     * @param nanos time it took
+     */
+    private static void recordParallel(int outcomes, long nanos) {
+        if (outcomes < MIN_MEASURED_OUTCOMES) return;
+        double measured = Math.max(0, nanos - outcomes * nanosPerOutcome / PARALLELISM);
+        overheadNanos += SMOOTHING * (measured - overheadNanos);
+    }
+
+    /**
+     * @return threads of the scoring, created when first needed
+     */
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(PARALLELISM, forkJoinPool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                thread.setName("group30-scoring-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * Score the best outcomes in parallel
+     * @param outcomeSpace our outcomes in order of utility, generated at least up to the outcomes to score
+     * @param evaluator nash product of the outcomes, up to date and not updated until this returns
+     * @param outcomes n# of outcomes to score, the first ones
+     * @param amountBids n# of best bids to find
+     * @param timed true to stop at the deadline, false to score every outcome
+     * @param deadline System.nanoTime() to stop at
+     * @return best bids found
+     */
+    public static Result score(LazyOutcomeSpace outcomeSpace, NashProductEvaluator evaluator, int outcomes,
+                               int amountBids, boolean timed, long deadline) {
+        // the first time the threads start, which isn't measured
+        boolean started = pool != null;
+        long start = System.nanoTime();
+        int rangeSize = Math.max(MIN_RANGE_SIZE, outcomes / (PARALLELISM * RANGES_PER_THREAD) + 1);
+        Result result = getPool().invoke(new ScoringTask(outcomeSpace, evaluator, 0, outcomes, rangeSize,
+                amountBids, timed, deadline));
+        if (started && result.abandonedBound == 0) recordParallel(outcomes, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Best bids of a range of outcomes
+     */
+    public static class Result {
+
+        // Best bids, best nash product first
+        private int[][] encodedBids;
+        private double[] nashProducts;
+        private int size;
+
+        // No outcome that wasn't scored has a higher nash product than this, 0 if all were scored
+        private double abandonedBound;
+
+        // n# of outcomes scored
+        private int bidsEvaluated;
+
+
+        /*FIELD GETTERS */
+
+        public int size() {
+            return this.size;
+        }
+
+        public int[] getEncodedBid(int index) {
+            return this.encodedBids[index];
+        }
+
+        public double getNashProduct(int index) {
+            return this.nashProducts[index];
+        }
+
+        public double getAbandonedBound() {
+            return this.abandonedBound;
+        }
+
+        public int getBidsEvaluated() {
+            return this.bidsEvaluated;
+        }
+
+        /**
+         * Constructor function
+         * @param amountBids n# of best bids to keep
+         * @param totalIssues total number of issues in the domain
+         */
+        private Result(int amountBids, int totalIssues) {
+            this.encodedBids = new int[amountBids][totalIssues];
+            this.nashProducts = new double[amountBids];
+        }
+
+        /**
+         * @return nash product a bid needs to be kept, -1 while there is room
+         */
+        private double getThreshold() {
+            return this.size == this.nashProducts.length ? this.nashProducts[this.size - 1] : -1;
+        }
+
+        /**
+         * Keep a bid if it is one of the best so far
+         */
+        private void save(int[] encodedBid, int offset, double nashProduct) {
+            int amountBids = this.nashProducts.length;
+            if (this.size == amountBids && nashProduct <= this.nashProducts[amountBids - 1]) return;
+
+            // drop the worst bid if full and shift worse bids down
+            int index = this.size < amountBids ? this.size++ : amountBids - 1;
+            int[] slot = this.encodedBids[index];
+            while (index > 0 && this.nashProducts[index - 1] < nashProduct) {
+                this.encodedBids[index] = this.encodedBids[index - 1];
+                this.nashProducts[index] = this.nashProducts[index - 1];
+                index--;
+            }
+            System.arraycopy(encodedBid, offset, slot, 0, slot.length);
+            this.encodedBids[index] = slot;
+            this.nashProducts[index] = nashProduct;
+        }
+
+        /**
+         * Add the best bids of another range
+         */
+        private void merge(Result other) {
+            for (int i = 0; i < other.size; i++) {
+                save(other.encodedBids[i], 0, other.nashProducts[i]);
+            }
+            this.abandonedBound = Math.max(this.abandonedBound, other.abandonedBound);
+            this.bidsEvaluated += other.bidsEvaluated;
+        }
+    }
+
+    /**
+     * Scores a range of outcomes, splitting it in two while it is larger than the range size
+     */
+    private static class ScoringTask extends RecursiveTask<Result> {
+
+        // Tasks are never serialized, RecursiveTask is Serializable
+        private static final long serialVersionUID = 1L;
+
+        // n# of outcomes scored together, as in NashBidSearch
+        private static int BLOCK_SIZE = 64;
+
+        private LazyOutcomeSpace outcomeSpace;
+        private NashProductEvaluator evaluator;
+        private int first;
+        private int end;
+        private int rangeSize;
+        private int amountBids;
+        private boolean timed;
+        private long deadline;
+
+        ScoringTask(LazyOutcomeSpace outcomeSpace, NashProductEvaluator evaluator, int first, int end, int rangeSize,
+                    int amountBids, boolean timed, long deadline) {
+            this.outcomeSpace = outcomeSpace;
+            this.evaluator = evaluator;
+            this.first = first;
+            this.end = end;
+            this.rangeSize = rangeSize;
+            this.amountBids = amountBids;
+            this.timed = timed;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Result compute() {
+            if (this.end - this.first <= this.rangeSize) return scoreRange();
+
+            int middle = (this.first + this.end) >>> 1;
+            ScoringTask left = new ScoringTask(this.outcomeSpace, this.evaluator, this.first, middle, this.rangeSize,
+                    this.amountBids, this.timed, this.deadline);
+            ScoringTask right = new ScoringTask(this.outcomeSpace, this.evaluator, middle, this.end, this.rangeSize,
+                    this.amountBids, this.timed, this.deadline);
+            left.fork();
+            Result result = right.compute();
+            result.merge(left.join());
+            return result;
+        }
+
+        /**
+         * Score the range a block at a time with an evaluator of its own
+         */
+        private Result scoreRange() {
+            int totalIssues = this.outcomeSpace.getDomainIndex().getTotalIssues();
+            NashProductEvaluator evaluator = this.evaluator.getThreadCopy();
+            Result result = new Result(this.amountBids, totalIssues);
+            int[] encodedOutcome = new int[totalIssues];
+            int[] blockOutcomes = new int[BLOCK_SIZE * totalIssues];
+            double[] blockUtilities = new double[BLOCK_SIZE];
+            double[] blockScores = new double[BLOCK_SIZE];
+
+            for (int first = this.first; first < this.end; first += BLOCK_SIZE) {
+                // out of time, the outcomes left have at most our utility as nash product
+                if (((first - this.first) & (CLOCK_CHECK_INTERVAL - 1)) == 0 && this.timed
+                        && System.nanoTime() - this.deadline > 0) {
+                    result.abandonedBound = this.outcomeSpace.getUtility(first);
+                    return result;
+                }
+
+                int count = Math.min(BLOCK_SIZE, this.end - first);
+                for (int c = 0; c < count; c++) {
+                    this.outcomeSpace.getEncodedOutcome(first + c, encodedOutcome);
+                    System.arraycopy(encodedOutcome, 0, blockOutcomes, c * totalIssues, totalIssues);
+                    blockUtilities[c] = this.outcomeSpace.getUtility(first + c);
+                }
+                evaluator.scoreBlock(blockOutcomes, blockUtilities, count, result.getThreshold(), blockScores);
+                result.bidsEvaluated += count;
+
+                for (int c = 0; c < count; c++) {
+                    if (blockScores[c] >= 0) result.save(blockOutcomes, c * totalIssues, blockScores[c]);
+                }
+            }
+            return result;
+        }
+    }
+}
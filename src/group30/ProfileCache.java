@@ -0,0 +1,188 @@
+package group30;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import negotiator.Domain;
+import negotiator.issue.Issue;
+import negotiator.issue.IssueDiscrete;
+import negotiator.issue.ValueDiscrete;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * Cache shared by all agents in the JVM of the domain indices and outcome spaces built in init,
+ * so only the first session on a domain and profile builds them and later sessions start right away.
+ * Domains are keyed by their issues and values and profiles by our utility of every value, so equal
+ * domains and profiles loaded from different files or by different sessions share an entry. Sessions get
+ * views of the shared index and outcome space that build bids on their own Domain.
+ * The least recently used outcome spaces are dropped when their memory estimate goes over the limit, checked
+ * when a space is added or handed out and whenever a cached space doubles its outcomes, and the least recently
+ * used domains when there are too many, agents that still use them keep them.
+ */
+public class ProfileCache {
+
+    // Max memory of the cached outcome spaces in bytes
+    private static long MAX_CACHE_BYTES = Long.getLong("group30.cache.bytes", 256L << 20);
+
+    // Max n# of cached domains, the outcome spaces of a dropped domain are dropped with it
+    private static int MAX_DOMAINS = 64;
+
+    // Index of each domain, by the issues and values of the domain, least recently used first
+    private static Map<String, DomainIndex> domainIndices = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Outcome space of each profile, least recently used first
+    private static Map<ProfileKey, LazyOutcomeSpace> outcomeSpaces = new LinkedHashMap<>(16, 0.75f, true);
+
+    // n# of outcome spaces built and found in the cache
+    private static int misses;
+    private static int hits;
+
+
+    /*FIELD GETTERS */
+
+    public static synchronized int getMisses() {
+        return misses;
+    }
+
+    public static synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * @param domain domain of the negotiation
+     * @return index of the domain, sharing its tables with other sessions on an equal domain
+     */
+    public static synchronized DomainIndex getDomainIndex(Domain domain) {
+        String key = getDomainKey(domain);
+        DomainIndex domainIndex = domainIndices.get(key);
+        if (domainIndex == null) {
+            domainIndex = new DomainIndex(domain);
+            domainIndices.put(key, domainIndex);
+            evictDomains();
+        }
+        return domainIndex.forDomain(domain);
+    }
+
+    /**
+     * @param domainIndex index of the domain, from getDomainIndex
+     * @param utilitySpace our utility space
+     * @return our outcomes in order of utility, sharing them with other sessions with an equal profile
+     */
+    public static LazyOutcomeSpace getOutcomeSpace(DomainIndex domainIndex, AdditiveUtilitySpace utilitySpace) {
+        ProfileKey key = new ProfileKey(domainIndex.getOriginal(),
+                LazyOutcomeSpace.getOwnUtilities(domainIndex, utilitySpace));
+        synchronized (ProfileCache.class) {
+            LazyOutcomeSpace outcomeSpace = outcomeSpaces.get(key);
+            if (outcomeSpace != null) {
+                hits++;
+            } else {
+                misses++;
+                outcomeSpace = new LazyOutcomeSpace(key.domainIndex, key.ownUtilities);
+                final LazyOutcomeSpace grown = outcomeSpace;
+                outcomeSpace.setGrowthListener(() -> evictGrown(grown));
+                outcomeSpaces.put(key, outcomeSpace);
+            }
+            evict(outcomeSpace);
+            return outcomeSpace.forDomain(domainIndex);
+        }
+    }
+
+    /**
+     * Drop all cached domains and outcome spaces
+     */
+    public static synchronized void clear() {
+        domainIndices.clear();
+        for (LazyOutcomeSpace outcomeSpace : outcomeSpaces.values()) {
+            outcomeSpace.setGrowthListener(null);
+        }
+        outcomeSpaces.clear();
+    }
+
+    /**
+     * Drop the least recently used outcome spaces if a cached space grew the cache over the limit
+     */
+    private static synchronized void evictGrown(LazyOutcomeSpace grown) {
+        evict(grown);
+    }
+
+    /**
+     * Drop the least recently used outcome spaces while the cache uses too much memory, except one
+     */
+    private static void evict(LazyOutcomeSpace keep) {
+        long bytes = 0;
+        for (LazyOutcomeSpace outcomeSpace : outcomeSpaces.values()) {
+            bytes += outcomeSpace.getMemoryEstimate();
+        }
+        Iterator<LazyOutcomeSpace> iterator = outcomeSpaces.values().iterator();
+        while (bytes > MAX_CACHE_BYTES && iterator.hasNext()) {
+            LazyOutcomeSpace outcomeSpace = iterator.next();
+            if (outcomeSpace == keep) continue;
+            bytes -= outcomeSpace.getMemoryEstimate();
+            outcomeSpace.setGrowthListener(null);
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Drop the least recently used domains while there are too many, and their outcome spaces,
+     * which a new index of the domain wouldn't find anyway as they are keyed by the index
+     */
+    private static void evictDomains() {
+        Iterator<DomainIndex> iterator = domainIndices.values().iterator();
+        while (domainIndices.size() > MAX_DOMAINS) {
+            DomainIndex domainIndex = iterator.next();
+            iterator.remove();
+            outcomeSpaces.entrySet().removeIf(entry -> {
+                if (entry.getKey().domainIndex != domainIndex) return false;
+                entry.getValue().setGrowthListener(null);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * @return names of the issues and values of a domain, in order
+     */
+    private static String getDomainKey(Domain domain) {
+        StringBuilder key = new StringBuilder();
+        for (Issue issue : domain.getIssues()) {
+            key.append(issue.getNumber()).append(':').append(issue.getName()).append('[');
+            // Assuming discrete issues
+            List<ValueDiscrete> values = ((IssueDiscrete) issue).getValues();
+            for (ValueDiscrete value : values) {
+                key.append(value.getValue()).append(';');
+            }
+            key.append(']');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Key of a profile, the domain and our utility of each value
+     */
+    private static class ProfileKey {
+        private final DomainIndex domainIndex;
+        private final double[][] ownUtilities;
+        private final int hash;
+
+        ProfileKey(DomainIndex domainIndex, double[][] ownUtilities) {
+            this.domainIndex = domainIndex;
+            this.ownUtilities = ownUtilities;
+            this.hash = 31 * System.identityHashCode(domainIndex) + Arrays.deepHashCode(ownUtilities);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ProfileKey)) return false;
+            ProfileKey key = (ProfileKey) other;
+            return this.domainIndex == key.domainIndex && Arrays.deepEquals(this.ownUtilities, key.ownUtilities);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package group30;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import negotiator.actions.Action;
+
+/**
+ * Asynchronous logger of the agent. Events are put in a bounded lock-free queue and written by a background
+ * thread, so agents never wait on the output. When the queue is full events are dropped and counted.
+ * Besides level gated messages it writes actions in the Log-Session csv format: round,turn,time,agent,action
+ *
+ * The shared logger writes to stdout at the level of the group30.log system property (OFF, WARN, INFO, DEBUG),
+ * WARN by default. Callers check isEnabled before building a message, so a disabled level costs one compare.
+ * The writer thread is started by the first event and parks until events come, so a logger that
+ * logs nothing costs no thread and no CPU.
+ */
+public class SessionLogger {
+
+    public enum Level { OFF, WARN, INFO, DEBUG }
+
+    // Capacity of the queue, a power of 2
+    private static int QUEUE_CAPACITY = 1 << 14;
+
+    // Logger shared by all agents in the JVM
+    private static SessionLogger sharedLogger;
+
+    // Events with a level above this one are not logged
+    private final Level level;
+
+    // Output, only used by the writer thread
+    private Writer writer;
+
+    // Bounded multi producer queue: a ring of events, each slot with a sequence number telling whether
+    // it is free for the producer of that position or filled for the consumer
+    private final AtomicReferenceArray<Object> events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private long consumerPosition;
+
+    // n# of events dropped because the queue was full
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Writer thread, started by the first event, and whether it is parked waiting for events
+    private final Thread writerThread;
+    private volatile boolean started;
+    private volatile boolean parked;
+    private volatile boolean closed;
+
+
+    /*FIELD GETTERS */
+
+    public Level getLevel() {
+        return this.level;
+    }
+
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * @return logger shared by all agents, writing to stdout
+     */
+    public static synchronized SessionLogger getLogger() {
+        if (sharedLogger == null) {
+            String name = System.getProperty("group30.log", "WARN");
+            Level level;
+            try {
+                level = Level.valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                // a typo in the level must not stop the agents from being created
+                System.err.println("Unknown group30.log level " + name + ", logging at WARN");
+                level = Level.WARN;
+            }
+            sharedLogger = new SessionLogger(new OutputStreamWriter(System.out), level);
+            Runtime.getRuntime().addShutdownHook(new Thread(sharedLogger::close));
+        }
+        return sharedLogger;
+    }
+
+    /**
+     * Constructor function
+     * @param writer output of the logger, closed with the logger unless it is stdout
+     * @param level events with a level above this one are not logged
+     */
+    public SessionLogger(Writer writer, Level level) {
+        this.writer = new BufferedWriter(writer, 1 << 16);
+        this.level = level;
+        this.events = new AtomicReferenceArray<>(QUEUE_CAPACITY);
+        this.sequences = new AtomicLongArray(QUEUE_CAPACITY);
+        this.mask = QUEUE_CAPACITY - 1;
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            this.sequences.set(i, i);
+        }
+
+        this.writerThread = new Thread(this::write, "group30-logger");
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * @return true if events of this level are logged
+     */
+    public boolean isEnabled(Level level) {
+        return level != Level.OFF && level.compareTo(this.level) <= 0;
+    }
+
+    /**
+     * Log a message
+     * @param level level of the message
+     * @param source who logs, e.g. the party id
+     * @param message message
+     */
+    public void log(Level level, Object source, String message) {
+        if (isEnabled(level)) offer(new Message(level, source, message));
+    }
+
+    /**
+     * Log an action as a line of the Log-Session csv: round,turn,time,agent,action
+     * @param round round of the session, from 1
+     * @param turn turn in the round, from 1
+     * @param time time of the session between 0 and 1
+     * @param agent name of the agent
+     * @param action action the agent took
+     */
+    public void logAction(int round, int turn, double time, Object agent, Action action) {
+        if (isEnabled(Level.INFO)) offer(new ActionEvent(round, turn, time, agent, action));
+    }
+
+    /**
+     * Write everything queued and stop the writer
+     */
+    public void close() {
+        synchronized (this) {
+            if (this.closed) return;
+            this.closed = true;
+            // nothing started the writer, write what is queued on this thread
+            if (!this.started) {
+                write();
+                return;
+            }
+        }
+        LockSupport.unpark(this.writerThread);
+        try {
+            this.writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Put an event in the queue, or drop it if the queue is full. Never blocks
+     */
+    private void offer(Object event) {
+        while (true) {
+            long position = this.producerPosition.get();
+            int slot = (int) position & this.mask;
+            long difference = this.sequences.get(slot) - position;
+            if (difference < 0) {
+                // consumer hasn't freed the slot yet, queue is full
+                this.dropped.incrementAndGet();
+                return;
+            }
+            if (difference == 0 && this.producerPosition.compareAndSet(position, position + 1)) {
+                this.events.lazySet(slot, event);
+                this.sequences.set(slot, position + 1);
+                if (!this.started) startWriter();
+                else if (this.parked) LockSupport.unpark(this.writerThread);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start the writer thread, unless it already was or the logger is closed
+     */
+    private synchronized void startWriter() {
+        if (this.started || this.closed) return;
+        this.writerThread.start();
+        this.started = true;
+    }
+
+    /**
+     * @return next event of the queue, null if empty. Only called by the writer thread
+     */
+    private Object poll() {
+        int slot = (int) this.consumerPosition & this.mask;
+        if (this.sequences.get(slot) != this.consumerPosition + 1) return null;
+        Object event = this.events.get(slot);
+        this.events.lazySet(slot, null);
+        this.sequences.set(slot, this.consumerPosition + QUEUE_CAPACITY);
+        this.consumerPosition++;
+        return event;
+    }
+
+    /**
+     * @return true if the next event of the queue is there to be polled. Only called by the writer thread
+     */
+    private boolean isFilled() {
+        return this.sequences.get((int) this.consumerPosition & this.mask) == this.consumerPosition + 1;
+    }
+
+    /**
+     * Writer thread: format and write events, flushing whenever the queue runs empty
+     */
+    private void write() {
+        try {
+            while (true) {
+                Object event = poll();
+                if (event != null) {
+                    this.writer.write(event.toString());
+                    this.writer.write('\n');
+                    continue;
+                }
+                this.writer.flush();
+                if (this.closed) break;
+                // park until an event or close. The queue is checked again after saying so,
+                // so an event offered in between either is seen or unparks the writer
+                this.parked = true;
+                if (!isFilled() && !this.closed) LockSupport.park(this);
+                this.parked = false;
+            }
+            if (this.dropped.get() > 0) {
+                this.writer.write("Logger dropped " + this.dropped.get() + " events\n");
+            }
+            this.writer.flush();
+            if (this != sharedLogger) this.writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Message event, formatted by the writer thread
+     */
+    private static class Message {
+        private final Level level;
+        private final Object source;
+        private final String message;
+
+        Message(Level level, Object source, String message) {
+            this.level = level;
+            this.source = source;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return this.level + " " + this.source + ": " + this.message;
+        }
+    }
+
+    /**
+     * Action event, formatted by the writer thread as a Log-Session csv line
+     */
+    private static class ActionEvent {
+        private final int round;
+        private final int turn;
+        private final double time;
+        private final Object agent;
+        private final Action action;
+
+        ActionEvent(int round, int turn, double time, Object agent, Action action) {
+            this.round = round;
+            this.turn = turn;
+            this.time = time;
+            this.agent = agent;
+            this.action = action;
+        }
+
+        @Override
+        public String toString() {
+            return this.round + "," + this.turn + "," + this.time + "," + this.agent + "," + this.action;
+        }
+    }
+}
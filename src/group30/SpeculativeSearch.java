@@ -0,0 +1,173 @@
+package group30;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import negotiator.bidding.BidDetails;
+
+/**
+ * Searches the next bid on a background thread while the opponents take their turns, against snapshots
+ * of the opponent models, so our own turn only has to pick up the result.
+ * A result is used if no opponent model changed since the snapshot and our min utility only dropped a little,
+ * otherwise the caller searches synchronously. Enabled with the group30.speculate system property.
+ */
+public class SpeculativeSearch {
+
+    // Search in the background, off by default
+    private static boolean ENABLED = Boolean.getBoolean("group30.speculate");
+
+    // Max amount our min utility may have dropped since the search started for its result to be used
+    private static double MAX_UTILITY_DRIFT = 0.005;
+
+    // Threads shared by all agents in the JVM
+    private static ExecutorService pool;
+
+    // Our outcomes in order of utility, shared with the searches
+    private LazyOutcomeSpace outcomeSpace;
+
+    // Search running or done for our next turn, null if none
+    private Future<Result> speculation;
+
+    // n# of results used, not ready in time and no longer valid
+    private int hits;
+    private int notReady;
+    private int stale;
+
+
+    /*FIELD GETTERS */
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public int getHits() {
+        return this.hits;
+    }
+
+    public int getNotReady() {
+        return this.notReady;
+    }
+
+    public int getStale() {
+        return this.stale;
+    }
+
+    /**
+     * Constructor function
+     * @param outcomeSpace our outcomes in order of utility
+     */
+    public SpeculativeSearch(LazyOutcomeSpace outcomeSpace) {
+        this.outcomeSpace = outcomeSpace;
+    }
+
+    /**
+     * @return threads of the searches, created when first needed
+     */
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "group30-speculation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Start searching the best bids for the current opponent models, replacing any earlier search
+     * @param minUtility our min acceptable utility now
+     * @param opponents models of the opponents, copied before returning
+     * @param amountBids n# of bids to find
+     */
+    public void start(double minUtility, Collection<OpponentModel> opponents, int amountBids) {
+        if (this.speculation != null) this.speculation.cancel(false);
+
+        List<OpponentModel> snapshots = new ArrayList<>(opponents.size());
+        long[] versions = new long[opponents.size()];
+        for (OpponentModel opponent : opponents) {
+            versions[snapshots.size()] = opponent.getVersion();
+            snapshots.add(opponent.getSnapshot());
+        }
+
+        this.speculation = getPool().submit(() -> {
+            NashBidSearch search = new NashBidSearch(this.outcomeSpace);
+            List<BidDetails> bids = search.search(minUtility, snapshots, amountBids);
+            return new Result(bids, search.isExact(), minUtility, versions);
+        });
+    }
+
+    /**
+     * Take the result of the search for this turn, if it is ready and still valid
+     * @param minUtility our min acceptable utility now
+     * @param opponents current models of the opponents
+     * @return result of the search, null to search synchronously
+     */
+    public Result take(double minUtility, Collection<OpponentModel> opponents) {
+        Future<Result> speculation = this.speculation;
+        this.speculation = null;
+        if (speculation == null) return null;
+        if (!speculation.isDone()) {
+            speculation.cancel(false);
+            this.notReady++;
+            return null;
+        }
+
+        Result result;
+        try {
+            result = speculation.get();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        // bids found are above the min utility searched, which must not be below ours now
+        double drift = result.minUtility - minUtility;
+        boolean valid = drift >= 0 && drift <= MAX_UTILITY_DRIFT && result.versions.length == opponents.size();
+        int i = 0;
+        for (OpponentModel opponent : opponents) {
+            if (!valid) break;
+            valid = opponent.getVersion() == result.versions[i++];
+        }
+        if (!valid) {
+            this.stale++;
+            return null;
+        }
+        this.hits++;
+        return result;
+    }
+
+    /**
+     * Bids found by a search in the background
+     */
+    public static class Result {
+        private final List<BidDetails> bids;
+        private final boolean exact;
+        private final double minUtility;
+        private final long[] versions;
+
+        Result(List<BidDetails> bids, boolean exact, double minUtility, long[] versions) {
+            this.bids = bids;
+            this.exact = exact;
+            this.minUtility = minUtility;
+            this.versions = versions;
+        }
+
+        /**
+         * @return the best bids found, best first, with their nash product as utility
+         */
+        public List<BidDetails> getBids() {
+            return this.bids;
+        }
+
+        /**
+         * @return true if the search was not cut short
+         */
+        public boolean isExact() {
+            return this.exact;
+        }
+    }
+}
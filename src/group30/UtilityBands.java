@@ -0,0 +1,150 @@
+package group30;
+
+import java.util.Random;
+import negotiator.bidding.BidDetails;
+
+/**
+ * The outcomes of a LazyOutcomeSpace split into bands of equal utility width,
+ * so a random bid above a min utility can be drawn without retrying.
+ * Outcomes are sorted so bands are contiguous. The first outcome of each band is indexed once as outcomes
+ * are generated, so a band is found by its utility in constant time.
+ * When more outcomes are above the min utility than the exact search generates (see
+ * NashBidSearch.getMaxExhaustiveBids), the acceptable bid nearest to the random utility is drawn instead, so drawing
+ * doesn't make the outcome space generate outcomes and a frontier of their neighbours that nothing else needs.
+ */
+public class UtilityBands {
+
+    // n# of bands between utility 0 and 1
+    private static int TOTAL_BANDS = 100;
+
+    // All outcomes, best utility first, generated as far as needed
+    private LazyOutcomeSpace outcomeSpace;
+
+    // Index of the first outcome in each band or a lower one, for the outcomes indexed so far
+    private int[] bandStarts = new int[TOTAL_BANDS];
+
+    // n# of outcomes indexed and the lowest band among them, TOTAL_BANDS before the first
+    private int indexedOutcomes;
+    private int lowestIndexedBand = TOTAL_BANDS;
+
+    // Last min utility and limit asked for and n# of outcomes above it
+    private double lastMinUtility = Double.NaN;
+    private int lastLimit;
+    private int lastAcceptableOutcomes;
+
+    // n# of bids drawn
+    private int draws;
+
+    // n# of times the band of the drawn utility had no acceptable bid and any acceptable bid was drawn instead
+    private int emptyBandFallbacks;
+
+    // n# of times no bid was above the min utility and the max utility bid was returned instead
+    private int noAcceptableBidFallbacks;
+
+    // n# of times too many bids were above the min utility and the bid nearest to the drawn utility was returned
+    private int nearUtilityDraws;
+
+
+    /*FIELD GETTERS */
+
+    public int getDraws() {
+        return this.draws;
+    }
+
+    public int getEmptyBandFallbacks() {
+        return this.emptyBandFallbacks;
+    }
+
+    public int getNoAcceptableBidFallbacks() {
+        return this.noAcceptableBidFallbacks;
+    }
+
+    public int getNearUtilityDraws() {
+        return this.nearUtilityDraws;
+    }
+
+    /**
+     * Constructor function
+     * @param outcomeSpace all outcomes sorted by our utility
+     */
+    public UtilityBands(LazyOutcomeSpace outcomeSpace) {
+        this.outcomeSpace = outcomeSpace;
+    }
+
+    /**
+     * @return band a utility falls in
+     */
+    private int getBand(double utility) {
+        int band = (int) (utility * TOTAL_BANDS);
+        return Math.max(0, Math.min(TOTAL_BANDS - 1, band));
+    }
+
+    /**
+     * Draw a random bid with utility > minUtility, choosing a random utility between minUtility and 1
+     * and then a random bid from the band of that utility
+     * @param minUtility min acceptable utility
+     * @param random source of randomness
+     * @return random bid above minUtility, or the max utility bid if there is none
+     */
+    public BidDetails getRandomBid(double minUtility, Random random) {
+        this.draws++;
+
+        int maxOutcomes = NashBidSearch.getMaxExhaustiveBids();
+        int acceptableOutcomes = countOutcomesAbove(minUtility, maxOutcomes + 1);
+        if (acceptableOutcomes == 0) {
+            this.noAcceptableBidFallbacks++;
+            return this.outcomeSpace.getMaxBidPossible();
+        }
+
+        // Make random utility in range
+        double utility = minUtility + random.nextDouble() * (1.0 - minUtility);
+
+        if (acceptableOutcomes > maxOutcomes) {
+            this.nearUtilityDraws++;
+            return this.outcomeSpace.getBidNearUtility(utility, minUtility);
+        }
+        index(acceptableOutcomes);
+
+        int band = getBand(utility);
+        int start = getBandStart(band, acceptableOutcomes);
+        int end = getBandStart(band - 1, acceptableOutcomes);
+        if (start >= end) {
+            this.emptyBandFallbacks++;
+            return this.outcomeSpace.getOutcome(random.nextInt(acceptableOutcomes));
+        }
+        return this.outcomeSpace.getOutcome(start + random.nextInt(end - start));
+    }
+
+    /**
+     * Index the bands of the outcomes up to a number, each outcome once
+     * @param outcomes n# of outcomes to index, all generated
+     */
+    private void index(int outcomes) {
+        for (; this.indexedOutcomes < outcomes; this.indexedOutcomes++) {
+            int band = getBand(this.outcomeSpace.getUtility(this.indexedOutcomes));
+            // the outcome starts every band from its own up to the lowest band indexed before it
+            while (this.lowestIndexedBand > band) {
+                this.bandStarts[--this.lowestIndexedBand] = this.indexedOutcomes;
+            }
+        }
+    }
+
+    /**
+     * @return index of the first acceptable outcome in a band or a lower one, the acceptable outcomes indexed
+     */
+    private int getBandStart(int band, int acceptableOutcomes) {
+        if (band < this.lowestIndexedBand) return acceptableOutcomes;
+        return Math.min(this.bandStarts[band], acceptableOutcomes);
+    }
+
+    /**
+     * @return n# of outcomes with utility > minUtility, which are the first ones, at most limit
+     */
+    private int countOutcomesAbove(double minUtility, int limit) {
+        if (minUtility == this.lastMinUtility && limit == this.lastLimit) return this.lastAcceptableOutcomes;
+        this.lastMinUtility = minUtility;
+        this.lastLimit = limit;
+        this.lastAcceptableOutcomes = this.outcomeSpace.countOutcomesAbove(minUtility, limit);
+        return this.lastAcceptableOutcomes;
+    }
+}